@@ -0,0 +1,118 @@
+package app.bankcardmanagementsystem.benchmark;
+
+import app.bankcardmanagementsystem.controller.dto.TransactionDto;
+import app.bankcardmanagementsystem.entity.Transaction;
+import app.bankcardmanagementsystem.service.engine.CardTransactionEngine;
+import app.bankcardmanagementsystem.service.impl.TransactionServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Пропускная способность списаний через CardTransactionEngine (group commit) против пути «запрос - транзакция».
+ * БД заменена моделью: коммит стоит {@code commitMicros}, занимает одно из 10 соединений (размер пула Hikari
+ * по умолчанию) и держит блокировки строк затронутых карт, как условный UPDATE баланса.
+ * Так видно, сколько даёт объединение коммитов при разном числе горячих карт; абсолютные числа
+ * на реальном PostgreSQL будут другими.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class CardTransactionEngineBenchmark {
+
+    @Param({"1", "64"})
+    private int cards;
+
+    @Param({"200", "1000"})
+    private int commitMicros;
+
+    private SimulatedTransactionService transactionService;
+    private CardTransactionEngine engine;
+    private TransactionDto dto;
+
+    @Setup
+    public void setUp() {
+        transactionService = new SimulatedTransactionService(cards, TimeUnit.MICROSECONDS.toNanos(commitMicros));
+        engine = new CardTransactionEngine(transactionService, true, 8, 64, 10_000);
+        dto = TransactionDto.builder().amount(BigDecimal.ONE).description("benchmark").build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public Transaction perRequest() {
+        return transactionService.addTransaction(nextCard(), dto);
+    }
+
+    @Benchmark
+    public Transaction engine() {
+        return engine.execute(nextCard(), dto);
+    }
+
+    private long nextCard() {
+        return ThreadLocalRandom.current().nextInt(cards) + 1L;
+    }
+
+    private static final class SimulatedTransactionService extends TransactionServiceImpl {
+
+        private final Semaphore connections = new Semaphore(10);
+        private final ReentrantLock[] rowLocks;
+        private final long commitNanos;
+
+        private SimulatedTransactionService(int cards, long commitNanos) {
+            super(null, null, null, null, null, null, null);
+            this.rowLocks = new ReentrantLock[cards];
+            for (int i = 0; i < cards; i++)
+                rowLocks[i] = new ReentrantLock();
+            this.commitNanos = commitNanos;
+        }
+
+        @Override
+        public Transaction addTransaction(Long cardId, TransactionDto dto) {
+            commit(List.of(cardId));
+            return transaction(dto);
+        }
+
+        @Override
+        public Map<Long, List<DebitResult>> addTransactions(Map<Long, List<TransactionDto>> debitsByCard) {
+            commit(new TreeSet<>(debitsByCard.keySet()));
+            Map<Long, List<DebitResult>> results = new HashMap<>();
+            debitsByCard.forEach((cardId, debits) ->
+                    results.put(cardId, debits.stream().map(debit -> DebitResult.success(transaction(debit))).toList()));
+            return results;
+        }
+
+        // Блокировки строк берутся по возрастанию id и держатся до конца коммита
+        private void commit(Collection<Long> cardIds) {
+            List<ReentrantLock> locks = cardIds.stream().map(id -> rowLocks[(int) (id - 1)]).toList();
+            connections.acquireUninterruptibly();
+            try {
+                locks.forEach(ReentrantLock::lock);
+                try {
+                    LockSupport.parkNanos(commitNanos);
+                } finally {
+                    locks.forEach(ReentrantLock::unlock);
+                }
+            } finally {
+                connections.release();
+            }
+        }
+
+        private static Transaction transaction(TransactionDto dto) {
+            return Transaction.builder().amount(dto.getAmount()).description(dto.getDescription()).build();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package app.bankcardmanagementsystem.benchmark;
+
+import app.bankcardmanagementsystem.entity.Role;
+import app.bankcardmanagementsystem.entity.User;
+import app.bankcardmanagementsystem.service.impl.JWTServiceImpl;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+
+import javax.crypto.SecretKey;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Горячие пути JWTServiceImpl: выпуск токенов, разбор access-токена с попаданием и промахом в кэш claims,
+ * а также разбор новым и переиспользуемым парсером.
+ * TokenRepo не нужен: методы выпуска и разбора токенов к нему не обращаются.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtBenchmark {
+
+    private static final String ACCESS_SECRET = "qBTmv4oXFFR2GwjexDJ4t6fsIUIUhhXqlktXjXdkcyygs8nPVEwMfo29VDRRepYDVV5IkIxBMzr7OEHXEHd37w==";
+    private static final String REFRESH_SECRET = "zL1HB3Pch05Avfynovxrf/kpF9O2m4NCWKJUjEp27s9J2jEG3ifiKCGylaZ8fDeoONSTJP/wAzKawB8F9rOMNg==";
+
+    private JWTServiceImpl cachedService;
+    private JWTServiceImpl uncachedService;
+    private SecretKey accessKey;
+    private JwtParser reusedParser;
+    private User user;
+    private String accessToken;
+
+    @Setup
+    public void setUp() {
+        cachedService = new JWTServiceImpl(null, ACCESS_SECRET, REFRESH_SECRET);
+        // Нулевой TTL: запись истекает сразу после создания, каждый разбор идёт мимо кэша
+        uncachedService = new JWTServiceImpl(null, ACCESS_SECRET, REFRESH_SECRET,
+                10_000, Duration.ZERO, 10_000, Duration.ofMinutes(5));
+        accessKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(ACCESS_SECRET));
+        reusedParser = Jwts.parserBuilder().setSigningKey(accessKey).build();
+        user = User.builder()
+                .id(1L)
+                .email("bench@mail.ru")
+                .password("password")
+                .roles(Set.of(Role.ROLE_USER))
+                .build();
+        accessToken = cachedService.generateToken(user);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return cachedService.generateToken(user);
+    }
+
+    @Benchmark
+    public String generateRefreshToken() {
+        return cachedService.generateRefreshToken(new HashMap<>(), user);
+    }
+
+    @Benchmark
+    public String getUserNameFromAccessTokenCacheHit() {
+        return cachedService.getUserNameFromAccessToken(accessToken);
+    }
+
+    @Benchmark
+    public String getUserNameFromAccessTokenCacheMiss() {
+        return uncachedService.getUserNameFromAccessToken(accessToken);
+    }
+
+    @Benchmark
+    public boolean isTokenValidAccessTokenCacheHit() {
+        return cachedService.isTokenValidAccessToken(accessToken, user);
+    }
+
+    @Benchmark
+    public boolean isTokenValidAccessTokenCacheMiss() {
+        return uncachedService.isTokenValidAccessToken(accessToken, user);
+    }
+
+    @Benchmark
+    public Claims parseWithNewParser() {
+        return Jwts.parserBuilder().setSigningKey(accessKey).build().parseClaimsJws(accessToken).getBody();
+    }
+
+    @Benchmark
+    public Claims parseWithReusedParser() {
+        return reusedParser.parseClaimsJws(accessToken).getBody();
+    }
+}
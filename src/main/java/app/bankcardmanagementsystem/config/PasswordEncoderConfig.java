@@ -0,0 +1,21 @@
+package app.bankcardmanagementsystem.config;
+
+import app.bankcardmanagementsystem.service.engine.BoundedPasswordEncoder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+
+@Configuration
+public class PasswordEncoderConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public BoundedPasswordEncoder passwordEncoder(@Value("${auth.bcrypt.strength:10}") int strength,
+                                                  @Value("${auth.hashing.pool-size:4}") int poolSize,
+                                                  @Value("${auth.hashing.queue-capacity:64}") int queueCapacity,
+                                                  @Value("${auth.hashing.timeout:5s}") Duration timeout) {
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(strength), poolSize, queueCapacity, timeout);
+    }
+}
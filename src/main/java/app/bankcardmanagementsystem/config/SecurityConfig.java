@@ -17,7 +17,6 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -31,6 +30,7 @@ public class SecurityConfig {
 
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
     private final UserService userService;
+    private final PasswordEncoder passwordEncoder;
 
     private static final String[] AUTH_WHITELIST = {
             "/api/v1/auth/**",
@@ -54,6 +54,8 @@ public class SecurityConfig {
                         .requestMatchers("/api/v1/auth/**")
                                 .permitAll()
                         .requestMatchers("/api/v1/admin").hasAnyAuthority(Role.ROLE_ADMIN.name())
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasAnyAuthority(Role.ROLE_ADMIN.name())
                               //  .requestMatchers("/api/v1/user").hasAnyAuthority(Role.ROLE_USER.name())
                         .anyRequest().permitAll())
                 .sessionManagement(manager->manager.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
@@ -73,15 +75,12 @@ public class SecurityConfig {
         UserDetailsService userDetailsService = userService.getUserDetailsService();
         if(userDetailsService != null) {
             provider.setUserDetailsService(userDetailsService);
-            provider.setPasswordEncoder(passwordEncoder());
+            provider.setPasswordEncoder(passwordEncoder);
+            // Хэш, посчитанный с меньшей стоимостью BCrypt, пересчитывается при успешном входе
+            provider.setUserDetailsPasswordService(userService::updatePasswordHash);
         }
         return provider;
     }
 
-    @Bean
-    public PasswordEncoder passwordEncoder(){
-        return new BCryptPasswordEncoder();
-    }
-
 
 }
\ No newline at end of file
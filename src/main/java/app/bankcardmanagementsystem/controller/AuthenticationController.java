@@ -7,6 +7,7 @@ import app.bankcardmanagementsystem.controller.dto.jwtToken.ResetPasswordDto;
 import app.bankcardmanagementsystem.controller.dto.jwtToken.SignUpRequest;
 import app.bankcardmanagementsystem.controller.dto.jwtToken.SigninRequest;
 import app.bankcardmanagementsystem.service.AuthenticationService;
+import app.bankcardmanagementsystem.service.engine.LoginRateLimiter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -29,6 +30,7 @@ import org.springframework.web.bind.annotation.*;
 public class AuthenticationController {
 
     private final AuthenticationService authenticationService;
+    private final LoginRateLimiter loginRateLimiter;
 
     @Operation(
             summary = "Регистрация нового пользователя",
@@ -36,8 +38,11 @@ public class AuthenticationController {
     )
     @ApiResponse(responseCode = "200", description = "Пользователь успешно зарегистрирован",
             content = @Content(schema = @Schema(implementation = JwtAuthenticationResponse.class)))
+    @ApiResponse(responseCode = "429", description = "Слишком много попыток, повторите после Retry-After секунд")
     @PostMapping(path = "/singup")
-    public ResponseEntity<JwtAuthenticationResponse> singup(@RequestBody SignUpRequest signUpRequest) {
+    public ResponseEntity<JwtAuthenticationResponse> singup(@RequestBody SignUpRequest signUpRequest,
+                                                            HttpServletRequest httpServletRequest) {
+        loginRateLimiter.acquire(signUpRequest.email(), httpServletRequest.getRemoteAddr());
         return ResponseEntity.ok(authenticationService.signnup(signUpRequest));
     }
 
@@ -48,8 +53,11 @@ public class AuthenticationController {
     @ApiResponse(responseCode = "200", description = "Успешная аутентификация",
             content = @Content(schema = @Schema(implementation = JwtAuthenticationResponse.class)))
     @ApiResponse(responseCode = "403", description = "Неверные учетные данные")
+    @ApiResponse(responseCode = "429", description = "Слишком много попыток, повторите после Retry-After секунд")
     @PostMapping("/signin")
-    public ResponseEntity<JwtAuthenticationResponse> signin(@RequestBody SigninRequest signinRequest) {
+    public ResponseEntity<JwtAuthenticationResponse> signin(@RequestBody SigninRequest signinRequest,
+                                                            HttpServletRequest httpServletRequest) {
+        loginRateLimiter.acquire(signinRequest.email(), httpServletRequest.getRemoteAddr());
         JwtAuthenticationResponse jwtAuthenticationResponse = authenticationService.signin(signinRequest);
         return ResponseEntity.ok(jwtAuthenticationResponse);
     }
@@ -61,6 +69,7 @@ public class AuthenticationController {
     )
     @ApiResponse(responseCode = "200", description = "Токен успешно обновлен",
             content = @Content(schema = @Schema(implementation = JwtAuthenticationResponse.class)))
+    @ApiResponse(responseCode = "401", description = "Refresh-токен истёк, уже обменян или отозван")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_USER')")
     @GetMapping("/refresh")
     public JwtAuthenticationResponse refresh(@CookieValue(value = "refreshToken", required = false) String refreshToken,
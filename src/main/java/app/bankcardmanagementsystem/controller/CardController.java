@@ -1,19 +1,31 @@
 package app.bankcardmanagementsystem.controller;
 
 import app.bankcardmanagementsystem.controller.advice.annotation.CustomExceptionHandler;
+import app.bankcardmanagementsystem.controller.dto.BatchTransactionResultDto;
+import app.bankcardmanagementsystem.controller.dto.CardTransactionDto;
 import app.bankcardmanagementsystem.controller.dto.TransactionDto;
 import app.bankcardmanagementsystem.controller.dto.TransferRequestDto;
+import app.bankcardmanagementsystem.controller.dto.card.CardDailySummaryDto;
 import app.bankcardmanagementsystem.controller.dto.card.CardDto;
+import app.bankcardmanagementsystem.controller.dto.card.CardIssuanceResultDto;
+import app.bankcardmanagementsystem.controller.dto.card.CardNumberDto;
+import app.bankcardmanagementsystem.controller.dto.card.CardSummaryDto;
 import app.bankcardmanagementsystem.controller.dto.card.CreateCardDto;
+import app.bankcardmanagementsystem.controller.dto.card.IssueCardsDto;
 import app.bankcardmanagementsystem.controller.dto.limitOnOperationByCard.CreateLimitOnOperationByCard;
 import app.bankcardmanagementsystem.entity.Card;
+import app.bankcardmanagementsystem.entity.CardStatus;
 import app.bankcardmanagementsystem.entity.LimitOnOperationByCard;
-import app.bankcardmanagementsystem.entity.Transaction;
 import app.bankcardmanagementsystem.mapper.CardMapper;
 import app.bankcardmanagementsystem.mapper.LimitOnOperationByCardMapper;
 import app.bankcardmanagementsystem.mapper.TransactionMapper;
+import app.bankcardmanagementsystem.service.CardService.CardPage;
+import app.bankcardmanagementsystem.service.IdempotencyService;
+import app.bankcardmanagementsystem.service.engine.CardIssuer;
+import app.bankcardmanagementsystem.service.engine.CardTransactionEngine;
 import app.bankcardmanagementsystem.service.impl.CardServiceImpl;
 import app.bankcardmanagementsystem.service.impl.TransactionServiceImpl;
+import app.bankcardmanagementsystem.utils.TransactionExportFormat;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -21,12 +33,21 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
@@ -36,11 +57,17 @@ import java.util.List;
 @CustomExceptionHandler
 public class CardController {
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final CardServiceImpl cardService;
     private final CardMapper cardMapper;
     private final TransactionServiceImpl transactionService;
     private final TransactionMapper transactionMapper;
     private final LimitOnOperationByCardMapper limitOnOperationByCardMapper;
+    private final CardTransactionEngine cardTransactionEngine;
+    private final IdempotencyService idempotencyService;
+    private final CardIssuer cardIssuer;
 
     @Operation(
             summary = "Создание новой карты",
@@ -55,6 +82,20 @@ public class CardController {
         return cardMapper.toDto(cardService.createCard(entity));
     }
 
+    @Operation(
+            summary = "Массовый выпуск карт",
+            description = "Доступно только для пользователей с ролью ADMIN. Номера генерируются сервером; "
+                    + "если передан список email, каждому пользователю выпускается и назначается по карте",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponse(responseCode = "200", description = "Карты выпущены",
+            content = @Content(schema = @Schema(implementation = CardIssuanceResultDto.class)))
+    @PostMapping("/issue")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN')")
+    public CardIssuanceResultDto issue(@RequestBody IssueCardsDto dto) {
+        return new CardIssuanceResultDto(cardIssuer.issue(dto));
+    }
+
 
     @Operation(
             summary = "Назначить карту пользователю",
@@ -113,15 +154,25 @@ public class CardController {
 
     @Operation(
             summary = "Получить все карты",
-            description = "Доступно только для пользователей с ролью ADMIN",
+            description = "Доступно только для пользователей с ролью ADMIN. Список отдаётся страницами по возрастанию id, "
+                    + "фильтруется по статусу, владельцу и сроку действия; курсор следующей страницы возвращается в заголовке X-Next-Cursor",
             security = @SecurityRequirement(name = "bearerAuth")
     )
     @ApiResponse(responseCode = "200", description = "Список карт",
-            content = @Content(schema = @Schema(implementation = Card.class)))
+            content = @Content(schema = @Schema(implementation = CardDto.class)))
     @GetMapping
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN')")
-    public List<CardDto> getAll() {
-        return cardMapper.toDtoList(cardService.getAll());
+    public List<CardDto> getAll(@RequestParam(required = false) CardStatus status,
+                                @RequestParam(required = false) Long userId,
+                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate expiresFrom,
+                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate expiresTo,
+                                @RequestParam(required = false) Long cursor,
+                                @RequestParam(required = false) Integer size,
+                                HttpServletResponse response) {
+        CardPage page = cardService.getListCards(status, userId, expiresFrom, expiresTo, cursor, size);
+        if (page.nextCursor() != null)
+            response.setHeader(NEXT_CURSOR_HEADER, String.valueOf(page.nextCursor()));
+        return cardMapper.rowsToDtoList(page.cards());
     }
 
     @Operation(
@@ -140,6 +191,22 @@ public class CardController {
         return cardMapper.toDto(cardService.getCard(id));
     }
 
+    @Operation(
+            summary = "Найти карту по номеру",
+            description = "Доступно только для пользователей с ролью ADMIN. Номер передаётся в теле запроса, чтобы не попадать в логи URL",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Карта найдена",
+                    content = @Content(schema = @Schema(implementation = CardDto.class))),
+            @ApiResponse(responseCode = "404", description = "Карта не найдена")
+    })
+    @PostMapping("/search")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN')")
+    public CardDto getByNumber(@RequestBody CardNumberDto dto) {
+        return cardMapper.toDto(cardService.getCardByNumber(dto.cardNumber()));
+    }
+
     @Operation(
             summary = "Установка лимита на карту",
             description = "Доступно только для пользователей с ролью ADMIN",
@@ -155,30 +222,105 @@ public class CardController {
 
     @Operation(
             summary = "Добавить транзакцию к карте",
-            description = "Доступно для пользователей с ролью USER",
+            description = "Доступно для пользователей с ролью USER. Повтор запроса с тем же заголовком Idempotency-Key "
+                    + "возвращает результат первого выполнения",
             security = @SecurityRequirement(name = "bearerAuth")
     )
     @ApiResponse(responseCode = "200", description = "Транзакция добавлена",
             content = @Content(schema = @Schema(implementation = TransactionDto.class)))
     @PostMapping("/{id}/transactions")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_USER')")
-    public TransactionDto addTransaction(@PathVariable Long id, @RequestBody TransactionDto dto) {
-        Transaction transaction = transactionService.addTransaction(id, dto);
-        return transactionMapper.toDto(transaction);
+    public TransactionDto addTransaction(@PathVariable Long id, @RequestBody TransactionDto dto,
+                                         @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        // Групповой коммит движка не может откатить одно списание из-за занятого ключа, поэтому запросы с ключом идут мимо него
+        return idempotencyService.execute(idempotencyKey, "transaction:" + id, recorder ->
+                !IdempotencyService.hasKey(idempotencyKey) && cardTransactionEngine.isEnabled()
+                        ? cardTransactionEngine.execute(id, dto)
+                        : transactionService.addTransaction(id, dto, recorder));
+    }
+
+    @Operation(
+            summary = "Пакетная загрузка транзакций по картам",
+            description = "Доступно только для пользователей с ролью ADMIN. Результат возвращается для каждого элемента пакета",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponse(responseCode = "200", description = "Пакет обработан",
+            content = @Content(schema = @Schema(implementation = BatchTransactionResultDto.class)))
+    @PostMapping("/transactions/batch")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN')")
+    public List<BatchTransactionResultDto> addTransactionBatch(@RequestBody List<CardTransactionDto> items) {
+        List<TransactionServiceImpl.DebitResult> results = transactionService.addTransactionBatch(items);
+        List<BatchTransactionResultDto> response = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            TransactionServiceImpl.DebitResult result = results.get(i);
+            response.add(new BatchTransactionResultDto(i, items.get(i).cardId(), result.isSuccess(),
+                    result.isSuccess() ? transactionMapper.toDto(result.transaction()) : null,
+                    result.isSuccess() ? null : result.error().getMessage()));
+        }
+        return response;
     }
 
     @Operation(
             summary = "Получить транзакции карты по ID",
-            description = "Доступно только для пользователей с ролью USER",
+            description = "Доступно только для пользователей с ролью USER. История отдаётся страницами от новых к старым, "
+                    + "курсор следующей страницы возвращается в заголовке X-Next-Cursor",
             security = @SecurityRequirement(name = "bearerAuth")
     )
     @ApiResponse(responseCode = "200", description = "История транзакций",
             content = @Content(schema = @Schema(implementation = TransactionDto.class)))
     @GetMapping("/{id}/transactions")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_USER')")
-    public List<TransactionDto> getTransactions(@PathVariable Long id) {
-        List<Transaction> cardTransactions = transactionService.getCardTransactions(id);
-        return transactionMapper.toDtoList(cardTransactions);
+    public List<TransactionDto> getTransactions(@PathVariable Long id,
+                                                @RequestParam(required = false) String cursor,
+                                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                @RequestParam(required = false) Integer size,
+                                                HttpServletResponse response) {
+        TransactionServiceImpl.TransactionPage page = transactionService.getCardTransactions(id, cursor, from, to, size);
+        if (page.nextCursor() != null)
+            response.setHeader(NEXT_CURSOR_HEADER, page.nextCursor());
+        return transactionMapper.toDtoList(page.transactions());
+    }
+
+    @Operation(
+            summary = "Выгрузка выписки по карте",
+            description = "Доступно для пользователей с ролью USER и ADMIN. Строки отдаются потоком в формате CSV или NDJSON",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponse(responseCode = "200", description = "Выписка")
+    @GetMapping("/{id}/transactions/export")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_USER')")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(@PathVariable Long id,
+                                                                    @RequestParam(defaultValue = "csv") String format,
+                                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        TransactionExportFormat exportFormat = TransactionExportFormat.of(format);
+        transactionService.checkCardAccess(id);
+        StreamingResponseBody body = out -> transactionService.exportCardTransactions(id, from, to, exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"card-" + id + "-transactions." + exportFormat.fileExtension() + "\"")
+                .body(body);
+    }
+
+    @Operation(
+            summary = "Сводка операций карты по дням",
+            description = "Доступно для пользователей с ролью USER и ADMIN. По умолчанию — с начала текущего месяца по сегодня",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponse(responseCode = "200", description = "Сводка за период",
+            content = @Content(schema = @Schema(implementation = CardSummaryDto.class)))
+    @GetMapping("/{id}/summary")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_USER')")
+    public CardSummaryDto getSummary(@PathVariable Long id,
+                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.withDayOfMonth(1);
+        List<CardDailySummaryDto> days = transactionService.getCardSummary(id, start, end).stream()
+                .map(day -> new CardDailySummaryDto(day.getDay(), day.getTotalDebit(), day.getTotalCredit(), day.getTxCount()))
+                .toList();
+        return CardSummaryDto.of(id, start, end, days);
     }
 
     ////////////////////////////////////////////////////////////////////
@@ -212,14 +354,17 @@ public class CardController {
 
     @Operation(
             summary = "Перевод между своих карт",
-            description = "Доступно для пользователей с ролью USER",
+            description = "Доступно для пользователей с ролью USER. Повтор запроса с тем же заголовком Idempotency-Key "
+                    + "возвращает результат первого выполнения",
             security = @SecurityRequirement(name = "bearerAuth")
     )
     @ApiResponse(responseCode = "200", description = "Перевод между своих карт выполнен успешно")
     @PostMapping("/transfer")
     @PreAuthorize("hasAnyAuthority('ROLE_ADMIN', 'ROLE_USER')")
-    public TransactionDto transfer(@RequestBody TransferRequestDto dto) {
-        return transactionMapper.toDto(transactionService.transferBetweenOwnCards(dto));
+    public TransactionDto transfer(@RequestBody TransferRequestDto dto,
+                                   @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "transfer",
+                recorder -> transactionService.transferBetweenOwnCards(dto, recorder));
     }
 
     private String getEmailCurrentUser() {
@@ -0,0 +1,53 @@
+package app.bankcardmanagementsystem.controller;
+
+import app.bankcardmanagementsystem.controller.advice.annotation.CustomExceptionHandler;
+import app.bankcardmanagementsystem.controller.dto.user.UserDto;
+import app.bankcardmanagementsystem.entity.Role;
+import app.bankcardmanagementsystem.service.UserService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/users")
+@RequiredArgsConstructor
+@Tag(name = "User Management", description = "Управление пользователями")
+@CustomExceptionHandler
+public class UserController {
+
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    private final UserService userService;
+
+    @Operation(
+            summary = "Список пользователей",
+            description = "Доступно только для пользователей с ролью ADMIN. Список отдаётся страницами, фильтруется по роли "
+                    + "и префиксу email, сортируется по id или email (sort=email,desc). Общее число найденных пользователей "
+                    + "возвращается в заголовке X-Total-Count",
+            security = @SecurityRequirement(name = "bearerAuth")
+    )
+    @ApiResponse(responseCode = "200", description = "Страница пользователей",
+            content = @Content(schema = @Schema(implementation = UserDto.class)))
+    @GetMapping
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN')")
+    public List<UserDto> getUsers(@RequestParam(required = false) String email,
+                                  @RequestParam(required = false) Role role,
+                                  @RequestParam(required = false) Integer page,
+                                  @RequestParam(required = false) Integer size,
+                                  @RequestParam(required = false) String sort,
+                                  HttpServletResponse response) {
+        Page<UserDto> users = userService.getListUsers(email, role, page, size, sort);
+        response.setHeader(TOTAL_COUNT_HEADER, String.valueOf(users.getTotalElements()));
+        return users.getContent();
+    }
+}
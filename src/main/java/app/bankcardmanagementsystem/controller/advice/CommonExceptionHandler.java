@@ -5,7 +5,11 @@ import app.bankcardmanagementsystem.controller.advice.annotation.CustomException
 import app.bankcardmanagementsystem.exception.CreateException;
 import app.bankcardmanagementsystem.exception.DeleteException;
 import app.bankcardmanagementsystem.exception.NotFoundException;
+import app.bankcardmanagementsystem.exception.ServiceUnavailableException;
+import app.bankcardmanagementsystem.exception.TooManyRequestsException;
 import app.bankcardmanagementsystem.exception.UpdateException;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authorization.AuthorizationDeniedException;
@@ -72,6 +76,20 @@ public class CommonExceptionHandler {
         return new Response(ex.getMessage(), Instant.now().toString());
     }
 
+    @ExceptionHandler(ServiceUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Response handlerServiceUnavailableException(ServiceUnavailableException ex, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        return new Response(ex.getMessage(), Instant.now().toString());
+    }
+
+    @ExceptionHandler(TooManyRequestsException.class)
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    public Response handlerTooManyRequestsException(TooManyRequestsException ex, HttpServletResponse response) {
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+        return new Response(ex.getMessage(), Instant.now().toString());
+    }
+
     @ExceptionHandler(DeleteException.class)
     @ResponseStatus(HttpStatus.CONFLICT)
     public Response handlerDeleteException(DeleteException ex) {
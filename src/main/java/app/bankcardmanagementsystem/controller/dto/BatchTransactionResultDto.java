@@ -0,0 +1,10 @@
+package app.bankcardmanagementsystem.controller.dto;
+
+public record BatchTransactionResultDto(
+        int index,
+        Long cardId,
+        boolean success,
+        TransactionDto transaction,
+        String error
+) {
+}
@@ -0,0 +1,7 @@
+package app.bankcardmanagementsystem.controller.dto;
+
+public record CardTransactionDto(
+        Long cardId,
+        TransactionDto transaction
+) {
+}
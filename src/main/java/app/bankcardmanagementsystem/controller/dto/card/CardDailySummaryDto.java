@@ -0,0 +1,12 @@
+package app.bankcardmanagementsystem.controller.dto.card;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public record CardDailySummaryDto(
+        LocalDate day,
+        BigDecimal totalDebit,
+        BigDecimal totalCredit,
+        long count
+) {
+}
@@ -0,0 +1,6 @@
+package app.bankcardmanagementsystem.controller.dto.card;
+
+public record CardNumberDto(
+        String cardNumber
+) {
+}
@@ -0,0 +1,28 @@
+package app.bankcardmanagementsystem.controller.dto.card;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+public record CardSummaryDto(
+        Long cardId,
+        LocalDate from,
+        LocalDate to,
+        BigDecimal totalDebit,
+        BigDecimal totalCredit,
+        long count,
+        List<CardDailySummaryDto> days
+) {
+
+    public static CardSummaryDto of(Long cardId, LocalDate from, LocalDate to, List<CardDailySummaryDto> days) {
+        BigDecimal debit = BigDecimal.ZERO;
+        BigDecimal credit = BigDecimal.ZERO;
+        long count = 0;
+        for (CardDailySummaryDto day : days) {
+            debit = debit.add(day.totalDebit());
+            credit = credit.add(day.totalCredit());
+            count += day.count();
+        }
+        return new CardSummaryDto(cardId, from, to, debit, credit, count, days);
+    }
+}
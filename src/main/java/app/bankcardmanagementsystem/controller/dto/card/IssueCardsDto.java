@@ -0,0 +1,18 @@
+package app.bankcardmanagementsystem.controller.dto.card;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Выпуск партии карт. Если указаны {@code emails}, выпускается по карте на каждый адрес и карта сразу
+ * назначается пользователю, {@code count} при этом не используется.
+ */
+public record IssueCardsDto(
+        Integer count,
+        List<String> emails,
+        String cardHolder,
+        LocalDate expiryDate,
+        BigDecimal balance
+) {
+}
@@ -1,7 +1,10 @@
 package app.bankcardmanagementsystem.controller.filter;
 
 import app.bankcardmanagementsystem.service.JWTService;
-import app.bankcardmanagementsystem.service.UserService;
+import app.bankcardmanagementsystem.service.engine.TokenDenylist;
+import app.bankcardmanagementsystem.service.engine.UserDetailsCache;
+import app.bankcardmanagementsystem.service.engine.UserDetailsCache.AuthenticatedUser;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -14,7 +17,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestAttributes;
@@ -33,7 +35,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final String PREFIX = "Bearer";
 
     private final JWTService jwtService;
-    private final UserService userService;
+    private final UserDetailsCache userDetailsCache;
+    private final TokenDenylist tokenDenylist;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, @NotNull(message = "Параметр ответа http фильтра авторизации = null") HttpServletResponse response, @NotNull(message = "Фильтр http авторизации = null ") FilterChain filterChain) throws ServletException, IOException {
@@ -47,15 +50,19 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         jwtToken = authHeader.substring(7);
-        login = jwtService.getUserNameFromAccessToken(jwtToken);
+        Claims claims = jwtService.getAccessTokenClaims(jwtToken);
+        login = claims != null ? claims.getSubject() : null;
         RequestContextHolder.currentRequestAttributes().setAttribute("login", login, RequestAttributes.SCOPE_REQUEST);
-        if ((StringUtils.isNotEmpty(login)) && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userService.getUserDetailsService().loadUserByUsername(login);
+        if ((StringUtils.isNotEmpty(login)) && SecurityContextHolder.getContext().getAuthentication() == null
+                && !tokenDenylist.isRevoked(login, claims.getIssuedAt())) {
+            AuthenticatedUser authenticatedUser = jwtService.getAuthenticatedUser(claims);
+            if (authenticatedUser == null)
+                authenticatedUser = userDetailsCache.get(login);
 
-            if (userDetails != null && jwtService.isTokenValidAccessToken(jwtToken, userDetails)) {
+            if (authenticatedUser != null && jwtService.isTokenValidAccessToken(jwtToken, authenticatedUser.user())) {
                 SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
 
-                UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+                UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(authenticatedUser.user(), null, authenticatedUser.authorities());
                 token.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 securityContext.setAuthentication(token);
                 SecurityContextHolder.setContext(securityContext);
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@NamedEntityGraph(name = Card.WITH_USER, attributeNodes = @NamedAttributeNode("user"))
 @NoArgsConstructor
 @AllArgsConstructor
 @Getter
@@ -16,12 +17,17 @@ import java.util.List;
 @Builder
 public class Card {
 
+    public static final String WITH_USER = "Card.user";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     private String encryptedCardNumber;
 
+    // HMAC номера для поиска и проверки дубликатов без расшифровки
+    private String cardNumberHash;
+
     // Маскированная версия (**** **** **** 1234) — для отображения
     private String maskedCardNumber;
 
@@ -40,7 +46,7 @@ public class Card {
     @OneToMany(mappedBy = "card", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<LimitOnOperationByCard> limitCards = new ArrayList<>();
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private User user;
 
@@ -0,0 +1,42 @@
+package app.bankcardmanagementsystem.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Суммы операций карты за день. Ведётся инкрементально в той же транзакции, что и запись операции.
+ */
+@Table(name = "card_daily_aggregate")
+@Entity
+@IdClass(CardDailyAggregate.Key.class)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Builder
+public class CardDailyAggregate {
+
+    @Id
+    private Long cardId;
+
+    @Id
+    private LocalDate day;
+
+    private BigDecimal totalDebit;
+
+    private BigDecimal totalCredit;
+
+    private long txCount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long cardId;
+        private LocalDate day;
+    }
+}
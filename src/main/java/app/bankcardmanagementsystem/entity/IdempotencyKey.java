@@ -0,0 +1,40 @@
+package app.bankcardmanagementsystem.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Выполненный запрос с заголовком Idempotency-Key. Пишется в одной транзакции с операцией
+ * и хранит ответ, который возвращается на повторы без обращения к карте.
+ */
+@Table(name = "idempotency_key",
+        uniqueConstraints = @UniqueConstraint(name = "uq_idempotency_key_username_key", columnNames = {"username", "idempotency_key"}))
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Builder
+public class IdempotencyKey {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String username;
+
+    private String idempotencyKey;
+
+    private String scope;
+
+    private Long transactionId;
+
+    private String description;
+
+    private BigDecimal amount;
+
+    private LocalDateTime createdAt;
+}
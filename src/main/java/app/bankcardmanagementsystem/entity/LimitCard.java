@@ -1,6 +1,26 @@
 package app.bankcardmanagementsystem.entity;
 
+import java.time.LocalDateTime;
+import java.time.Period;
+
 public enum LimitCard{
-        MONTH,
-        DAY
+        MONTH(Period.ofMonths(1)),
+        DAY(Period.ofDays(1));
+
+        private final Period period;
+
+        LimitCard(Period period) {
+                this.period = period;
+        }
+
+        public LocalDateTime periodEnd(LocalDateTime start) {
+                return start.plus(period);
+        }
+
+        /**
+         * Длина окна в формате ISO-8601 (P1D, P1M), который PostgreSQL принимает как interval.
+         */
+        public String isoPeriod() {
+                return period.toString();
+        }
 }
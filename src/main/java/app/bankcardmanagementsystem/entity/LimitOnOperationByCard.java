@@ -24,7 +24,7 @@ public class LimitOnOperationByCard{
     private LocalDateTime startPeriud;
     private LocalDateTime endPeriud;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "card_id")
     private Card card;
 
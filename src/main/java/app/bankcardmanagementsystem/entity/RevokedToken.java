@@ -0,0 +1,27 @@
+package app.bankcardmanagementsystem.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Запись denylist access-токенов: все токены пользователя, выпущенные раньше {@code revokedBefore},
+ * считаются отозванными.
+ */
+@Table(name = "revoked_token")
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@Builder
+public class RevokedToken {
+
+    @Id
+    private String subject;
+
+    private LocalDateTime revokedBefore;
+}
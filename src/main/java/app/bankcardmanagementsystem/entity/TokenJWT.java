@@ -2,8 +2,16 @@ package app.bankcardmanagementsystem.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
 
-@Table(name = "token_jwt")
+import java.time.LocalDateTime;
+
+/**
+ * Сессия пользователя: SHA-256 refresh-токена и срок его действия. Сам токен не хранится.
+ */
+@Table(name = "token_jwt",
+        uniqueConstraints = @UniqueConstraint(name = "uq_token_jwt_token_hash", columnNames = "token_hash"))
 @Entity
 @NoArgsConstructor
 @AllArgsConstructor
@@ -13,9 +21,13 @@ import lombok.*;
 public class TokenJWT {
 
     @Id
-    private Long userId;
-    private String refreshToken;
-    @OneToOne(fetch = FetchType.LAZY)
-    @MapsId
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private String tokenHash;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id")
+    @OnDelete(action = OnDeleteAction.CASCADE)
     private User user;
+    private LocalDateTime expiresAt;
+    private LocalDateTime createdAt;
 }
@@ -14,17 +14,23 @@ import java.time.LocalDateTime;
 @Builder
 public class Transaction {
 
+    // Последовательность с шагом allocationSize, чтобы Hibernate мог пакетно вставлять транзакции
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transaction_seq")
+    @SequenceGenerator(name = "transaction_seq", sequenceName = "transaction_seq", allocationSize = 50)
     private Long id;
 
     private String description;
 
     private BigDecimal amount;
 
+    @Enumerated(EnumType.STRING)
+    @Builder.Default
+    private TransactionDirection direction = TransactionDirection.DEBIT;
+
     private LocalDateTime timestamp;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "card_id")
     private Card card;
 }
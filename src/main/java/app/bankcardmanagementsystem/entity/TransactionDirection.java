@@ -0,0 +1,9 @@
+package app.bankcardmanagementsystem.entity;
+
+/**
+ * Направление движения средств по карте. Задаётся сервисом при записи, а не выводится из описания или знака суммы.
+ */
+public enum TransactionDirection {
+    DEBIT,
+    CREDIT
+}
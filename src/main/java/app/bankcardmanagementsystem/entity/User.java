@@ -16,18 +16,22 @@ import java.util.stream.Collectors;
 
 @Table(name = "usr")
 @Entity
+@NamedEntityGraph(name = User.WITH_ROLES, attributeNodes = @NamedAttributeNode("roles"))
 @AllArgsConstructor
 @Builder
 @Setter
 @Getter
 public class User implements UserDetails {
+
+    public static final String WITH_ROLES = "User.roles";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     private String password;
     private String email;
 
-    @ElementCollection(targetClass = Role.class, fetch = FetchType.EAGER)
+    @ElementCollection(targetClass = Role.class, fetch = FetchType.LAZY)
     @CollectionTable(name = "user_role", joinColumns = @JoinColumn(name = "user_id"))
     @Enumerated(EnumType.STRING)
     private Set<Role> roles;
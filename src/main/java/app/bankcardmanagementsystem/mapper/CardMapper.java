@@ -3,9 +3,12 @@ package app.bankcardmanagementsystem.mapper;
 import app.bankcardmanagementsystem.controller.dto.card.CardDto;
 import app.bankcardmanagementsystem.controller.dto.card.CreateCardDto;
 import app.bankcardmanagementsystem.entity.Card;
+import app.bankcardmanagementsystem.repository.projection.CardListRow;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 
+import java.util.List;
+
 @Mapper(componentModel = "spring")
 public interface CardMapper extends BaseMapper<Card, CardDto> {
 
@@ -13,4 +16,8 @@ public interface CardMapper extends BaseMapper<Card, CardDto> {
 
     @Mapping(target = "userId", source = "user.id")
     CardDto toDto(Card card);
+
+    CardDto toDto(CardListRow row);
+
+    List<CardDto> rowsToDtoList(List<CardListRow> rows);
 }
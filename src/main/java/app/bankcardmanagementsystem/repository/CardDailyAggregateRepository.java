@@ -0,0 +1,64 @@
+package app.bankcardmanagementsystem.repository;
+
+import app.bankcardmanagementsystem.entity.CardDailyAggregate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface CardDailyAggregateRepository extends JpaRepository<CardDailyAggregate, CardDailyAggregate.Key> {
+
+    List<CardDailyAggregate> findByCardIdAndDayBetweenOrderByDay(Long cardId, LocalDate from, LocalDate to);
+
+    /**
+     * Прибавляет суммы к дневному агрегату карты, создавая строку при первой операции за день.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO card_daily_aggregate (card_id, day, total_debit, total_credit, tx_count)
+            VALUES (:cardId, :day, :debit, :credit, :count)
+            ON CONFLICT (card_id, day) DO UPDATE
+            SET total_debit = card_daily_aggregate.total_debit + EXCLUDED.total_debit,
+                total_credit = card_daily_aggregate.total_credit + EXCLUDED.total_credit,
+                tx_count = card_daily_aggregate.tx_count + EXCLUDED.tx_count
+            """, nativeQuery = true)
+    int add(@Param("cardId") Long cardId,
+            @Param("day") LocalDate day,
+            @Param("debit") BigDecimal debit,
+            @Param("credit") BigDecimal credit,
+            @Param("count") long count);
+
+    /**
+     * Пересчитывает дневные агрегаты карт с id в (afterCardId, toCardId] по всей их истории и заменяет сохранённые значения.
+     * Результат не зависит от того, сколько записей уже было учтено, поэтому пересчёт можно повторять.
+     * Вызывать под блокировкой строк этих карт, иначе параллельное списание может потеряться.
+     * Списания и поступления различаются по колонке direction.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO card_daily_aggregate (card_id, day, total_debit, total_credit, tx_count)
+            SELECT t.card_id,
+                   CAST(t.timestamp AS date),
+                   COALESCE(SUM(ABS(t.amount)) FILTER (WHERE t.direction = 'DEBIT'), 0),
+                   COALESCE(SUM(ABS(t.amount)) FILTER (WHERE t.direction = 'CREDIT'), 0),
+                   COUNT(*)
+            FROM transaction t
+            WHERE t.card_id > :afterCardId AND t.card_id <= :toCardId
+            GROUP BY t.card_id, CAST(t.timestamp AS date)
+            ON CONFLICT (card_id, day) DO UPDATE
+            SET total_debit = EXCLUDED.total_debit,
+                total_credit = EXCLUDED.total_credit,
+                tx_count = EXCLUDED.tx_count
+            """, nativeQuery = true)
+    int recompute(@Param("afterCardId") long afterCardId,
+                  @Param("toCardId") long toCardId);
+}
@@ -1,11 +1,102 @@
 package app.bankcardmanagementsystem.repository;
 
 import app.bankcardmanagementsystem.entity.Card;
+import app.bankcardmanagementsystem.entity.CardStatus;
+import app.bankcardmanagementsystem.repository.projection.CardListRow;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface CardRepository extends JpaRepository<Card, Long> {
 
     List<Card> findAllByUser_Email(String email);
-}
\ No newline at end of file
+
+    // Владелец нужен вызывающему коду (проверка, сброс кэшей), поэтому читается тем же запросом
+    @EntityGraph(Card.WITH_USER)
+    Optional<Card> findByIdAndUser_Email(Long id, String email);
+
+    @EntityGraph(Card.WITH_USER)
+    Optional<Card> findWithUserById(Long id);
+
+    Optional<Card> findByCardNumberHash(String cardNumberHash);
+
+    /**
+     * Есть ли карта с таким номером: по blind index или, пока карта не перешифрована, по значению в старом формате.
+     */
+    @Query("""
+            select count(c) > 0 from Card c
+            where c.cardNumberHash = :hash
+               or (c.cardNumberHash is null and c.encryptedCardNumber in :legacyValues)
+            """)
+    boolean existsByNumber(@Param("hash") String hash, @Param("legacyValues") Collection<String> legacyValues);
+
+    @Query("select c.id from Card c where c.user.email = :email")
+    List<Long> findIdsByUserEmail(@Param("email") String email);
+
+    /**
+     * Страница списка карт по возрастанию id, начиная после {@code afterId}. Фильтры со значением {@code null} не применяются.
+     */
+    @Query("""
+            select new app.bankcardmanagementsystem.repository.projection.CardListRow(
+                c.id, c.encryptedCardNumber, c.cardHolder, c.expiryDate, c.balance, c.status, u.id)
+            from Card c left join c.user u
+            where c.id > :afterId
+              and (:status is null or c.status = :status)
+              and (:userId is null or u.id = :userId)
+              and (:expiresFrom is null or c.expiryDate >= :expiresFrom)
+              and (:expiresTo is null or c.expiryDate <= :expiresTo)
+            order by c.id
+            """)
+    List<CardListRow> findListRows(@Param("afterId") Long afterId,
+                                   @Param("status") CardStatus status,
+                                   @Param("userId") Long userId,
+                                   @Param("expiresFrom") LocalDate expiresFrom,
+                                   @Param("expiresTo") LocalDate expiresTo,
+                                   Limit limit);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Card c where c.id in :ids order by c.id")
+    List<Card> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Атомарно списывает положительную сумму с активной карты, если на ней достаточно средств и срок её действия не истёк.
+     * @return количество изменённых строк: 0 — сумма не положительна, карта не найдена, не активна, просрочена или средств недостаточно
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE card SET balance = balance - :amount
+            WHERE id = :id AND :amount > 0 AND balance >= :amount AND status = 'ACTIVE'
+              AND (expiry_date IS NULL OR expiry_date >= CURRENT_DATE)
+            """, nativeQuery = true)
+    int debit(@Param("id") Long id, @Param("amount") BigDecimal amount);
+
+    /**
+     * Переводит в EXPIRED очередную порцию карт со сроком действия раньше {@code today}.
+     * Отбор идёт по частичному индексу idx_card_expiry_date_not_expired, строки, занятые другими транзакциями, пропускаются.
+     * @return количество изменённых строк; меньше {@code chunkSize} — просроченных карт не осталось
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE card SET status = 'EXPIRED'
+            WHERE id IN (SELECT id FROM card
+                         WHERE expiry_date < :today AND status <> 'EXPIRED'
+                         LIMIT :chunkSize
+                         FOR UPDATE SKIP LOCKED)
+            """, nativeQuery = true)
+    int expireOverdue(@Param("today") LocalDate today, @Param("chunkSize") int chunkSize);
+
+}
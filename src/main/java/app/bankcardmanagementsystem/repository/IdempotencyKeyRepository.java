@@ -0,0 +1,41 @@
+package app.bankcardmanagementsystem.repository;
+
+import app.bankcardmanagementsystem.entity.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, Long> {
+
+    Optional<IdempotencyKey> findByUsernameAndIdempotencyKey(String username, String idempotencyKey);
+
+    /**
+     * Сохраняет выполненный запрос. Вызывается внутри транзакции самой операции; если ключ уже занят,
+     * уникальный индекс прерывает транзакцию, и операция откатывается целиком.
+     */
+    @Modifying
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Query(value = "INSERT INTO idempotency_key (username, idempotency_key, scope, transaction_id, description, amount, created_at) "
+            + "VALUES (:username, :idempotencyKey, :scope, :transactionId, :description, :amount, :createdAt)", nativeQuery = true)
+    int insertCompleted(@Param("username") String username,
+                        @Param("idempotencyKey") String idempotencyKey,
+                        @Param("scope") String scope,
+                        @Param("transactionId") Long transactionId,
+                        @Param("description") String description,
+                        @Param("amount") BigDecimal amount,
+                        @Param("createdAt") LocalDateTime createdAt);
+
+    @Modifying
+    @Transactional
+    @Query("delete from IdempotencyKey k where k.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
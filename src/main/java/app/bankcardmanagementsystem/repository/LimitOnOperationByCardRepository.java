@@ -1,9 +1,16 @@
 package app.bankcardmanagementsystem.repository;
 
+import app.bankcardmanagementsystem.entity.LimitCard;
 import app.bankcardmanagementsystem.entity.LimitOnOperationByCard;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -11,4 +18,50 @@ public interface LimitOnOperationByCardRepository extends JpaRepository<LimitOnO
 
     List<LimitOnOperationByCard> findByCard_Id(Long cardId);
 
+    long countByCard_Id(Long cardId);
+
+    /**
+     * Уменьшает остаток всех лимитов карты одним запросом по принципу «всё или ничего»: если хотя бы одного
+     * лимита не хватает на сумму, не меняется ни одна строка. Если изменено меньше строк, чем лимитов у карты,
+     * списание превышает лимит, и откатывать в БД нечего.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE limit_on_operation_by_card SET remaining_crd_limit = remaining_crd_limit - :amount
+            WHERE card_id = :cardId
+              AND NOT EXISTS (SELECT 1 FROM limit_on_operation_by_card
+                              WHERE card_id = :cardId AND remaining_crd_limit < :amount)
+            """, nativeQuery = true)
+    int debitRemaining(@Param("cardId") Long cardId, @Param("amount") BigDecimal amount);
+
+    @Query("select l.limitCard from LimitOnOperationByCard l where l.card.id = :cardId and l.remainingCrdLimit < :amount")
+    List<LimitCard> findLimitTypesBelow(@Param("cardId") Long cardId, @Param("amount") BigDecimal amount);
+
+    /**
+     * Открывает новое окно для порции истёкших лимитов одного типа и восстанавливает их остаток.
+     * Строки, заблокированные текущими списаниями, пропускаются и будут обработаны следующим запуском.
+     * Если пропущено больше одного окна, новое окно начинается с текущего момента.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            UPDATE limit_on_operation_by_card l
+            SET remaining_crd_limit = l.amount,
+                start_periud = CASE WHEN l.end_periud + CAST(:period AS interval) > :now
+                                    THEN l.end_periud ELSE CAST(:now AS timestamp) END,
+                end_periud = CASE WHEN l.end_periud + CAST(:period AS interval) > :now
+                                  THEN l.end_periud + CAST(:period AS interval) ELSE CAST(:now AS timestamp) + CAST(:period AS interval) END
+            FROM (SELECT id FROM limit_on_operation_by_card
+                  WHERE end_periud <= :now AND limit_card = :limitCard
+                  ORDER BY end_periud
+                  LIMIT :chunkSize
+                  FOR UPDATE SKIP LOCKED) expired
+            WHERE l.id = expired.id
+            """, nativeQuery = true)
+    int rolloverExpired(@Param("limitCard") String limitCard,
+                        @Param("period") String period,
+                        @Param("now") LocalDateTime now,
+                        @Param("chunkSize") int chunkSize);
+
 }
@@ -0,0 +1,28 @@
+package app.bankcardmanagementsystem.repository;
+
+import app.bankcardmanagementsystem.entity.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, String> {
+
+    /**
+     * Сдвигает границу отзыва пользователя вперёд; более ранняя граница не перезаписывает более позднюю.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO revoked_token (subject, revoked_before) VALUES (:subject, :revokedBefore) "
+            + "ON CONFLICT (subject) DO UPDATE SET revoked_before = GREATEST(revoked_token.revoked_before, EXCLUDED.revoked_before)",
+            nativeQuery = true)
+    int revoke(@Param("subject") String subject, @Param("revokedBefore") LocalDateTime revokedBefore);
+
+    List<RevokedToken> findByRevokedBeforeAfter(LocalDateTime after);
+}
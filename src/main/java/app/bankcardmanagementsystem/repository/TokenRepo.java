@@ -2,15 +2,45 @@ package app.bankcardmanagementsystem.repository;
 
 import app.bankcardmanagementsystem.entity.TokenJWT;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface TokenRepo extends JpaRepository<TokenJWT, Long> {
 
-    void deleteByRefreshToken(String refreshToken);
+    /**
+     * Удаляет сессию по хэшу токена. Возвращает 0, если токен уже использован или удалён.
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from TokenJWT t where t.tokenHash = :tokenHash")
+    int deleteByTokenHash(@Param("tokenHash") String tokenHash);
 
-    Optional<TokenJWT> findByRefreshToken(String refreshToken);
+    Optional<TokenJWT> findByTokenHash(String tokenHash);
+
+    /**
+     * Удаляет все сессии пользователя одним запросом.
+     * @return хэши удалённых токенов
+     */
+    @Transactional
+    @Query(value = "DELETE FROM token_jwt WHERE user_id IN (SELECT id FROM usr WHERE email = :email) RETURNING token_hash",
+            nativeQuery = true)
+    List<String> deleteByUserEmail(@Param("email") String email);
+
+    /**
+     * Удаляет не больше {@code batchSize} истёкших сессий, чтобы не держать долгую блокировку.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM token_jwt WHERE id IN "
+            + "(SELECT id FROM token_jwt WHERE expires_at < :now LIMIT :batchSize)", nativeQuery = true)
+    int deleteExpired(@Param("now") LocalDateTime now, @Param("batchSize") int batchSize);
 
 }
@@ -1,10 +1,49 @@
 package app.bankcardmanagementsystem.repository;
 
 import app.bankcardmanagementsystem.entity.Transaction;
+import app.bankcardmanagementsystem.repository.projection.TransactionExportRow;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
-    List<Transaction> findByCardId(Long cardId);
+
+    // Keyset-страница истории карты: записи строго "после" (afterTimestamp, afterId) в порядке убывания,
+    // читается по индексу (card_id, timestamp, id) без OFFSET
+    @Query("""
+            select t from Transaction t
+            where t.card.id = :cardId
+              and t.timestamp >= :from
+              and (t.timestamp < :afterTimestamp or (t.timestamp = :afterTimestamp and t.id < :afterId))
+            order by t.timestamp desc, t.id desc
+            """)
+    List<Transaction> findPageByCardId(@Param("cardId") Long cardId,
+                                       @Param("from") LocalDateTime from,
+                                       @Param("afterTimestamp") LocalDateTime afterTimestamp,
+                                       @Param("afterId") Long afterId,
+                                       Limit limit);
+
+    // Курсор на стороне сервера: PostgreSQL отдаёт строки порциями по fetch size,
+    // если запрос выполняется внутри транзакции
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            select new app.bankcardmanagementsystem.repository.projection.TransactionExportRow(t.id, t.timestamp, t.amount, t.description)
+            from Transaction t
+            where t.card.id = :cardId and t.timestamp >= :from and t.timestamp <= :to
+            order by t.timestamp, t.id
+            """)
+    Stream<TransactionExportRow> streamForExport(@Param("cardId") Long cardId,
+                                                 @Param("from") LocalDateTime from,
+                                                 @Param("to") LocalDateTime to);
 }
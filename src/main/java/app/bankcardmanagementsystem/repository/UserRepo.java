@@ -1,18 +1,48 @@
 package app.bankcardmanagementsystem.repository;
 
+import app.bankcardmanagementsystem.entity.Role;
 import app.bankcardmanagementsystem.entity.User;
+import app.bankcardmanagementsystem.repository.projection.UserListRow;
+import app.bankcardmanagementsystem.repository.projection.UserRoleRow;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepo extends JpaRepository<User, Long> {
 
+    // Роли загружаются лениво; методы, чей результат идёт в аутентификацию или маппер, читают их тем же запросом
+    @EntityGraph(User.WITH_ROLES)
     Optional<User> findByEmail(String email);
 
+    @Override
+    @EntityGraph(User.WITH_ROLES)
+    Optional<User> findById(Long id);
+
     Optional<Boolean> deleteUserByEmail(String username);
 
     boolean existsUserByEmail(String email);
 
+    /**
+     * Страница пользователей без хэшей паролей. {@code emailPattern} — экранированный префикс с {@code %} на конце.
+     */
+    @Query(value = "select new app.bankcardmanagementsystem.repository.projection.UserListRow(u.id, u.email) from User u "
+            + "where (:emailPattern is null or u.email like :emailPattern escape '\\') "
+            + "and (:role is null or exists (select 1 from User ur join ur.roles r where ur.id = u.id and r = :role))",
+            countQuery = "select count(u) from User u "
+                    + "where (:emailPattern is null or u.email like :emailPattern escape '\\') "
+                    + "and (:role is null or exists (select 1 from User ur join ur.roles r where ur.id = u.id and r = :role))")
+    Page<UserListRow> findListRows(@Param("emailPattern") String emailPattern, @Param("role") Role role, Pageable pageable);
+
+    @Query("select new app.bankcardmanagementsystem.repository.projection.UserRoleRow(u.id, r) from User u join u.roles r where u.id in :userIds")
+    List<UserRoleRow> findRolesByUserIds(@Param("userIds") Collection<Long> userIds);
+
 }
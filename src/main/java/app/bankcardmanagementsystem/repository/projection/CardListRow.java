@@ -0,0 +1,20 @@
+package app.bankcardmanagementsystem.repository.projection;
+
+import app.bankcardmanagementsystem.entity.CardStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Строка списка карт для администратора. Читается конструктором в JPQL, владелец не загружается — берётся только user_id.
+ */
+public record CardListRow(
+        Long id,
+        String encryptedCardNumber,
+        String cardHolder,
+        LocalDate expiryDate,
+        BigDecimal balance,
+        CardStatus status,
+        Long userId
+) {
+}
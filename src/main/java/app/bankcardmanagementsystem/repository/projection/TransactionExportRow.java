@@ -0,0 +1,15 @@
+package app.bankcardmanagementsystem.repository.projection;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Строка выписки. Читается конструктором в JPQL, поэтому не попадает в контекст персистентности.
+ */
+public record TransactionExportRow(
+        Long id,
+        LocalDateTime timestamp,
+        BigDecimal amount,
+        String description
+) {
+}
@@ -0,0 +1,10 @@
+package app.bankcardmanagementsystem.repository.projection;
+
+/**
+ * Строка списка пользователей для администратора. Читается конструктором в JPQL без хэша пароля.
+ */
+public record UserListRow(
+        Long id,
+        String email
+) {
+}
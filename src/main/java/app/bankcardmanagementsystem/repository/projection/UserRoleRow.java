@@ -0,0 +1,9 @@
+package app.bankcardmanagementsystem.repository.projection;
+
+import app.bankcardmanagementsystem.entity.Role;
+
+public record UserRoleRow(
+        Long userId,
+        Role role
+) {
+}
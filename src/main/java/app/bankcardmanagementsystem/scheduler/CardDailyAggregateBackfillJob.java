@@ -0,0 +1,71 @@
+package app.bankcardmanagementsystem.scheduler;
+
+import app.bankcardmanagementsystem.repository.CardDailyAggregateRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+
+/**
+ * Досчитывает card_daily_aggregate по истории, записанной до появления агрегатов.
+ * Карты обрабатываются порциями по возрастанию id: строки карт порции блокируются так же, как при списании,
+ * и их агрегаты пересчитываются из transaction целиком, поэтому результат верен независимо от того,
+ * что успели записать старые и новые экземпляры. Порция и сдвиг прогресса фиксируются одной транзакцией
+ * под блокировкой строки прогресса. После завершения запуск ничего не делает.
+ * <p>
+ * Старые экземпляры, не пишущие агрегаты, должны быть остановлены до начала досчёта: выкатка должна
+ * укладываться в {@code aggregate.backfill.initial-delay}. Если она затянулась, досчёт перезапускается сбросом прогресса
+ * ({@code UPDATE card_daily_aggregate_backfill SET last_card_id = 0, completed = false}).
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class CardDailyAggregateBackfillJob {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CardDailyAggregateRepository cardDailyAggregateRepository;
+    @Value("${aggregate.backfill.chunk-size:500}")
+    private int chunkSize;
+
+    @Scheduled(initialDelayString = "${aggregate.backfill.initial-delay:900000}",
+            fixedDelayString = "${aggregate.backfill.fixed-delay:600000}")
+    public void run() {
+        int chunks = 0;
+        while (Boolean.TRUE.equals(transactionTemplate.execute(status -> backfillChunk())))
+            chunks++;
+        if (chunks > 0)
+            log.info("Card daily aggregates backfilled in {} chunks", chunks);
+    }
+
+    /**
+     * @return {@code true}, если порция обработана и есть смысл продолжать
+     */
+    public boolean backfillChunk() {
+        Map<String, Object> state = jdbcTemplate.queryForMap(
+                "SELECT last_card_id, completed FROM card_daily_aggregate_backfill WHERE id = 1 FOR UPDATE");
+        if ((Boolean) state.get("completed"))
+            return false;
+
+        long lastCardId = ((Number) state.get("last_card_id")).longValue();
+        Long toCardId = jdbcTemplate.queryForObject(
+                "SELECT max(id) FROM (SELECT id FROM card WHERE id > ? ORDER BY id LIMIT ?) chunk",
+                Long.class, lastCardId, chunkSize);
+        if (toCardId == null) {
+            jdbcTemplate.update("UPDATE card_daily_aggregate_backfill SET completed = true WHERE id = 1");
+            return false;
+        }
+
+        // Порядок блокировок тот же, что у списаний и переводов, - по возрастанию id
+        jdbcTemplate.queryForList("SELECT id FROM card WHERE id > ? AND id <= ? ORDER BY id FOR UPDATE",
+                Long.class, lastCardId, toCardId);
+        cardDailyAggregateRepository.recompute(lastCardId, toCardId);
+        jdbcTemplate.update("UPDATE card_daily_aggregate_backfill SET last_card_id = ? WHERE id = 1", toCardId);
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+package app.bankcardmanagementsystem.scheduler;
+
+import app.bankcardmanagementsystem.repository.CardRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * Переводит карты с истёкшим сроком действия в статус EXPIRED. Работает порциями по {@code card.expiry.chunk-size}
+ * строк, каждая порция — один UPDATE в отдельной короткой транзакции. Списания с просроченных карт отклоняются
+ * и до запуска задачи, статус нужен для отображения и отчётов.
+ */
+@Component
+@Slf4j
+public class CardExpirySweepJob {
+
+    private final CardRepository cardRepository;
+    private final Timer duration;
+    private final Counter expired;
+    @Value("${card.expiry.chunk-size:5000}")
+    private int chunkSize;
+
+    public CardExpirySweepJob(CardRepository cardRepository, MeterRegistry meterRegistry) {
+        this.cardRepository = cardRepository;
+        this.duration = Timer.builder("card.expiry.sweep.duration")
+                .description("Время одного запуска перевода просроченных карт в EXPIRED")
+                .register(meterRegistry);
+        this.expired = Counter.builder("card.expiry.sweep.cards")
+                .description("Число карт, переведённых в EXPIRED")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${card.expiry.cron:0 5 0 * * *}")
+    public void run() {
+        duration.record(() -> sweep(LocalDate.now()));
+    }
+
+    public long sweep(LocalDate today) {
+        long total = 0;
+        int updated;
+        do {
+            updated = cardRepository.expireOverdue(today, chunkSize);
+            total += updated;
+        } while (updated == chunkSize);
+
+        if (total > 0) {
+            expired.increment(total);
+            log.info("Expired {} cards", total);
+        }
+        return total;
+    }
+}
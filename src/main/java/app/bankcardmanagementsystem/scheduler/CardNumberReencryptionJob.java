@@ -0,0 +1,104 @@
+package app.bankcardmanagementsystem.scheduler;
+
+import app.bankcardmanagementsystem.service.engine.CardNumberCipher;
+import app.bankcardmanagementsystem.utils.CardEncryptionUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Перешифровывает номера карт, записанные до появления AES-GCM (card_number_hash ещё пуст).
+ * Карты идут порциями по возрастанию id, каждая порция - отдельная транзакция с одним batch update
+ * под блокировкой строки прогресса card_number_reencryption, поэтому экземпляры не обрабатывают карты одновременно.
+ * Каждая строка обновляется, только если такого blind index ещё нет: дубликат номера и нечитаемое значение
+ * остаются как есть и попадают в лог, а прогресс всё равно сдвигается, чтобы одна строка не останавливала миграцию.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class CardNumberReencryptionJob {
+
+    private static final String UPDATE_CARD = """
+            UPDATE card SET encrypted_card_number = ?, card_number_hash = ?
+            WHERE id = ? AND NOT EXISTS (SELECT 1 FROM card WHERE card_number_hash = ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CardNumberCipher cardNumberCipher;
+    @Value("${card.encryption.reencrypt.batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(initialDelayString = "${card.encryption.reencrypt.initial-delay:30000}",
+            fixedDelayString = "${card.encryption.reencrypt.fixed-delay:3600000}")
+    public void run() {
+        int total = 0;
+        while (true) {
+            Chunk chunk = transactionTemplate.execute(status -> reencryptChunk());
+            if (chunk == null || chunk.lastId() == null)
+                break;
+            total += chunk.updated();
+        }
+        if (total > 0)
+            log.info("Re-encrypted {} card numbers", total);
+    }
+
+    /**
+     * Перешифровывает следующую порцию карт после сохранённого прогресса и сдвигает его.
+     */
+    public Chunk reencryptChunk() {
+        Long afterId = jdbcTemplate.queryForObject(
+                "SELECT last_card_id FROM card_number_reencryption WHERE id = 1 FOR UPDATE", Long.class);
+        // Без SKIP LOCKED: занятую строку нельзя пропустить, прогресс уйдёт дальше и к ней не вернётся
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT id, encrypted_card_number FROM card WHERE id > ? AND card_number_hash IS NULL "
+                        + "ORDER BY id LIMIT ? FOR UPDATE", afterId, batchSize);
+        if (rows.isEmpty())
+            return new Chunk(null, 0);
+
+        List<Object[]> updates = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            long id = ((Number) row.get("id")).longValue();
+            String stored = (String) row.get("encrypted_card_number");
+            try {
+                // Значению в новом формате не хватает только blind index
+                boolean current = CardNumberCipher.isCurrentFormat(stored);
+                String cardNumber = current ? cardNumberCipher.decrypt(stored) : CardEncryptionUtil.decodeLegacy(stored);
+                String encrypted = current ? stored : cardNumberCipher.encrypt(cardNumber);
+                String hash = cardNumberCipher.blindIndex(cardNumber);
+                updates.add(new Object[]{encrypted, hash, id, hash});
+            } catch (RuntimeException e) {
+                log.warn("Card {} has unreadable card number, skipped: {}", id, e.getMessage());
+            }
+        }
+
+        int updated = 0;
+        if (!updates.isEmpty()) {
+            int[] counts = jdbcTemplate.batchUpdate(UPDATE_CARD, updates);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0)
+                    log.warn("Card {} has the same number as another card, skipped", updates.get(i)[2]);
+                else
+                    updated++;
+            }
+        }
+        long lastId = ((Number) rows.get(rows.size() - 1).get("id")).longValue();
+        jdbcTemplate.update("UPDATE card_number_reencryption SET last_card_id = ? WHERE id = 1", lastId);
+        return new Chunk(lastId, updated);
+    }
+
+    /**
+     * @param lastId  id последней просмотренной карты, {@code null} - карт для перешифрования не осталось
+     * @param updated сколько карт перешифровано
+     */
+    public record Chunk(Long lastId, int updated) {
+    }
+}
@@ -0,0 +1,31 @@
+package app.bankcardmanagementsystem.scheduler;
+
+import app.bankcardmanagementsystem.repository.IdempotencyKeyRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Удаляет ключи идемпотентности старше {@code idempotency.retention}.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class IdempotencyKeyCleanupJob {
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    @Value("${idempotency.retention:24h}")
+    private Duration retention;
+
+    @Scheduled(fixedDelayString = "${idempotency.cleanup.fixed-delay:3600000}")
+    public void run() {
+        int deleted = idempotencyKeyRepository.deleteCreatedBefore(LocalDateTime.now().minus(retention));
+        if (deleted > 0)
+            log.info("Deleted {} expired idempotency keys", deleted);
+    }
+}
@@ -0,0 +1,66 @@
+package app.bankcardmanagementsystem.scheduler;
+
+import app.bankcardmanagementsystem.entity.LimitCard;
+import app.bankcardmanagementsystem.repository.LimitOnOperationByCardRepository;
+import app.bankcardmanagementsystem.service.engine.CardLimitEngine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Переоткрывает истёкшие окна DAY/MONTH лимитов. Работает порциями по {@code limit.rollover.chunk-size}
+ * строк, каждая порция — отдельная короткая транзакция, поэтому блокировки не держатся на всю таблицу.
+ */
+@Component
+@Slf4j
+public class LimitRolloverJob {
+
+    private final LimitOnOperationByCardRepository limitRepository;
+    private final CardLimitEngine cardLimitEngine;
+    private final Timer duration;
+    private final Counter rolledOver;
+    @Value("${limit.rollover.chunk-size:5000}")
+    private int chunkSize;
+
+    public LimitRolloverJob(LimitOnOperationByCardRepository limitRepository,
+                            CardLimitEngine cardLimitEngine,
+                            MeterRegistry meterRegistry) {
+        this.limitRepository = limitRepository;
+        this.cardLimitEngine = cardLimitEngine;
+        this.duration = Timer.builder("limit.rollover.duration")
+                .description("Время одного запуска переоткрытия окон лимитов")
+                .register(meterRegistry);
+        this.rolledOver = Counter.builder("limit.rollover.rows")
+                .description("Число лимитов, для которых открыто новое окно")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${limit.rollover.fixed-delay:60000}")
+    public void run() {
+        duration.record(() -> rollover(LocalDateTime.now()));
+    }
+
+    public long rollover(LocalDateTime now) {
+        long total = 0;
+        for (LimitCard limitCard : LimitCard.values()) {
+            int updated;
+            do {
+                updated = limitRepository.rolloverExpired(limitCard.name(), limitCard.isoPeriod(), now, chunkSize);
+                total += updated;
+            } while (updated == chunkSize);
+        }
+
+        if (total > 0) {
+            rolledOver.increment(total);
+            cardLimitEngine.invalidateAll();
+            log.info("Rolled over {} card limits", total);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,36 @@
+package app.bankcardmanagementsystem.scheduler;
+
+import app.bankcardmanagementsystem.repository.TokenRepo;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Удаляет истёкшие сессии пачками по {@code jwt.refresh-cleanup.batch-size}, каждая пачка — отдельная транзакция.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class RefreshTokenCleanupJob {
+
+    private final TokenRepo tokenRepo;
+    @Value("${jwt.refresh-cleanup.batch-size:1000}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${jwt.refresh-cleanup.fixed-delay:3600000}")
+    public void run() {
+        LocalDateTime now = LocalDateTime.now();
+        long total = 0;
+        int deleted;
+        do {
+            deleted = tokenRepo.deleteExpired(now, batchSize);
+            total += deleted;
+        } while (deleted == batchSize);
+        if (total > 0)
+            log.info("Deleted {} expired refresh token sessions", total);
+    }
+}
@@ -0,0 +1,21 @@
+package app.bankcardmanagementsystem.scheduler;
+
+import app.bankcardmanagementsystem.service.engine.TokenDenylist;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Дочитывает в denylist отзывы access-токенов, сделанные на других узлах.
+ */
+@Component
+@RequiredArgsConstructor
+public class TokenDenylistRefreshJob {
+
+    private final TokenDenylist tokenDenylist;
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-delay:15000}", initialDelayString = "${jwt.revocation.refresh-delay:15000}")
+    public void run() {
+        tokenDenylist.refresh();
+    }
+}
@@ -0,0 +1,138 @@
+package app.bankcardmanagementsystem.scheduler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Обслуживание помесячных секций таблицы transaction:
+ * заранее создаёт секции на {@code transaction.partition.months-ahead} месяцев вперёд
+ * и отсоединяет секции старше {@code transaction.partition.retention-months}, перенося их в схему архива.
+ */
+@Component
+@Slf4j
+public class TransactionPartitionMaintenanceJob {
+
+    private static final String PARTITION_PREFIX = "transaction_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final String DEFAULT_PARTITION = "transaction_default";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter failures;
+    @Value("${transaction.partition.months-ahead:3}")
+    private int monthsAhead;
+    @Value("${transaction.partition.retention-months:24}")
+    private int retentionMonths;
+    @Value("${transaction.partition.archive-schema:transaction_archive}")
+    private String archiveSchema;
+
+    public TransactionPartitionMaintenanceJob(JdbcTemplate jdbcTemplate,
+                                              TransactionTemplate transactionTemplate,
+                                              MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.failures = Counter.builder("transaction.partition.failures")
+                .description("Число неудачных попыток создать или архивировать секцию transaction")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${transaction.partition.cron:0 0 3 * * *}")
+    public void run() {
+        maintain(YearMonth.now());
+    }
+
+    public void maintain(YearMonth current) {
+        for (int i = 0; i <= monthsAhead; i++)
+            createPartition(current.plusMonths(i));
+
+        if (retentionMonths <= 0)
+            return;
+        YearMonth oldestKept = current.minusMonths(retentionMonths);
+        for (String partition : findPartitions()) {
+            if (partition.length() != PARTITION_PREFIX.length() + 6 || !partition.startsWith(PARTITION_PREFIX))
+                continue;
+            YearMonth month = YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+            if (month.isBefore(oldestKept))
+                archivePartition(partition);
+        }
+    }
+
+    // Если в секцию по умолчанию уже попали строки нового месяца, CREATE ... PARTITION OF отказывает,
+    // поэтому секция по умолчанию отсоединяется, строки диапазона переносятся в новую секцию,
+    // и она присоединяется обратно — всё в одной транзакции
+    private void createPartition(YearMonth month) {
+        String name = PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+        LocalDate from = month.atDay(1);
+        LocalDate to = month.plusMonths(1).atDay(1);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, "\"" + name + "\"")))
+                    return;
+                boolean hasDefaultRows = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                        "SELECT EXISTS (SELECT 1 FROM \"" + DEFAULT_PARTITION + "\" WHERE \"timestamp\" >= ? AND \"timestamp\" < ?)",
+                        Boolean.class, from, to));
+                if (hasDefaultRows)
+                    jdbcTemplate.execute("ALTER TABLE \"transaction\" DETACH PARTITION \"" + DEFAULT_PARTITION + "\"");
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS \"" + name + "\" PARTITION OF \"transaction\" FOR VALUES FROM ('"
+                        + from + "') TO ('" + to + "')");
+                if (hasDefaultRows) {
+                    int moved = jdbcTemplate.update("INSERT INTO \"transaction\" SELECT * FROM \"" + DEFAULT_PARTITION
+                            + "\" WHERE \"timestamp\" >= ? AND \"timestamp\" < ?", from, to);
+                    jdbcTemplate.update("DELETE FROM \"" + DEFAULT_PARTITION + "\" WHERE \"timestamp\" >= ? AND \"timestamp\" < ?", from, to);
+                    jdbcTemplate.execute("ALTER TABLE \"transaction\" ATTACH PARTITION \"" + DEFAULT_PARTITION + "\" DEFAULT");
+                    log.info("Moved {} rows from {} into transaction partition {}", moved, DEFAULT_PARTITION, name);
+                }
+            });
+        } catch (DataAccessException e) {
+            failures.increment();
+            log.error("Failed to create transaction partition {}", name, e);
+        }
+    }
+
+    private List<String> findPartitions() {
+        return jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                JOIN pg_class p ON p.oid = i.inhparent
+                WHERE p.relname = 'transaction'
+                """, String.class);
+    }
+
+    private List<String> findForeignKeys(String table) {
+        return jdbcTemplate.queryForList("""
+                SELECT conname FROM pg_constraint
+                WHERE conrelid = CAST(? AS regclass) AND contype = 'f'
+                """, String.class, "\"" + table + "\"");
+    }
+
+    // DETACH берёт короткую эксклюзивную блокировку родителя; при занятой таблице упадёт по lock_timeout
+    // и будет повторён при следующем запуске.
+    // Отсоединённая секция сохраняет клонированный внешний ключ на card, из-за которого нельзя было бы
+    // удалить карту с архивными операциями, поэтому он снимается в той же транзакции
+    private void archivePartition(String name) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.execute("ALTER TABLE \"transaction\" DETACH PARTITION \"" + name + "\"");
+                for (String constraint : findForeignKeys(name))
+                    jdbcTemplate.execute("ALTER TABLE \"" + name + "\" DROP CONSTRAINT \"" + constraint + "\"");
+                jdbcTemplate.execute("ALTER TABLE \"" + name + "\" SET SCHEMA \"" + archiveSchema + "\"");
+            });
+            log.info("Transaction partition {} archived to schema {}", name, archiveSchema);
+        } catch (DataAccessException e) {
+            failures.increment();
+            log.error("Failed to archive transaction partition {}", name, e);
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package app.bankcardmanagementsystem.service;
 
 import app.bankcardmanagementsystem.entity.Card;
+import app.bankcardmanagementsystem.entity.CardStatus;
 import app.bankcardmanagementsystem.entity.LimitOnOperationByCard;
+import app.bankcardmanagementsystem.repository.projection.CardListRow;
 
+import java.time.LocalDate;
 import java.util.List;
 
 public interface CardService {
@@ -18,13 +21,27 @@ public interface CardService {
 
     List<Card> getAll();
 
+    /**
+     * Страница списка карт для администратора по возрастанию id.
+     * @param cursor id последней карты предыдущей страницы, {@code null} для первой
+     */
+    CardPage getListCards(CardStatus status, Long userId, LocalDate expiresFrom, LocalDate expiresTo, Long cursor, Integer size);
+
     List<Card> getAllCardsUser(String email);
 
     Card getCard(Long id);
 
+    /**
+     * Поиск карты по номеру через blind index, без расшифровки номеров.
+     */
+    Card getCardByNumber(String cardNumber);
+
     void setLimitOnOperationByCard(Long idCard, LimitOnOperationByCard limitOnOperationByCard);
 
     void requestOnBlockCard(Long id, String massage);
 
     Card encryptedNumberAndMasked(Card card, String cardNumber);
+
+    record CardPage(List<CardListRow> cards, Long nextCursor) {
+    }
 }
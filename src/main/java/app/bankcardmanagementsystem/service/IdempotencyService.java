@@ -0,0 +1,24 @@
+package app.bankcardmanagementsystem.service;
+
+import app.bankcardmanagementsystem.controller.dto.TransactionDto;
+import app.bankcardmanagementsystem.entity.Transaction;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+public interface IdempotencyService {
+
+    /**
+     * Выполняет операцию не более одного раза для ключа текущего пользователя.
+     * Повтор с тем же ключом возвращает сохранённый результат первого выполнения.
+     * Операция получает колбэк и обязана вызвать его со своим результатом внутри собственной транзакции БД:
+     * так ключ фиксируется вместе со списанием или не фиксируется вовсе.
+     * @param key значение заголовка Idempotency-Key, {@code null} — без дедупликации
+     * @param scope операция, к которой привязан ключ
+     */
+    TransactionDto execute(String key, String scope, Function<Consumer<Transaction>, Transaction> operation);
+
+    static boolean hasKey(String key) {
+        return key != null && !key.isBlank();
+    }
+}
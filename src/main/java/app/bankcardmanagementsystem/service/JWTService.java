@@ -2,6 +2,8 @@ package app.bankcardmanagementsystem.service;
 
 import app.bankcardmanagementsystem.entity.TokenJWT;
 import app.bankcardmanagementsystem.entity.User;
+import app.bankcardmanagementsystem.service.engine.UserDetailsCache.AuthenticatedUser;
+import io.jsonwebtoken.Claims;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,6 +22,17 @@ public interface JWTService {
 
     String getUserNameFromRefreshToken(String token);
 
+    /**
+     * @return claims действительного access-токена или {@code null}
+     */
+    Claims getAccessTokenClaims(String token);
+
+    /**
+     * Пользователь из claims access-токена в stateless-режиме.
+     * @return {@code null}, если режим выключен или токен выпущен без id и ролей
+     */
+    AuthenticatedUser getAuthenticatedUser(Claims claims);
+
     String extractUserName(String token, SecretKey secretKey);
 
     boolean isTokenValidAccessToken(String token, UserDetails userDetails);
@@ -29,5 +42,15 @@ public interface JWTService {
     @Transactional
     TokenJWT getRefreshToken(String refreshToken);
 
+    /**
+     * @return {@code true}, если токен был действующей сессией и погашен этим вызовом
+     */
+    boolean consumeRefreshToken(String refreshToken);
+
     void removeRefreshToken(String refreshToken);
+
+    /**
+     * Завершает все сессии пользователя: ни один выданный ему ранее refresh-токен больше не обменивается.
+     */
+    void removeAllRefreshTokens(String username);
 }
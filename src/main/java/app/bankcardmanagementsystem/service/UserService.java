@@ -5,9 +5,10 @@ import app.bankcardmanagementsystem.controller.dto.user.UpdateUserDto;
 import app.bankcardmanagementsystem.controller.dto.user.UserDto;
 import app.bankcardmanagementsystem.entity.Role;
 import app.bankcardmanagementsystem.entity.User;
+import org.springframework.data.domain.Page;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 
-import java.util.List;
 import java.util.Set;
 
 public interface UserService {
@@ -18,7 +19,9 @@ public interface UserService {
 
     UserDto updateDataUser(UpdateUserDto updateUserDto);
 
-    List<UserDto> getListUsers();
+    UserDetails updatePasswordHash(UserDetails userDetails, String encodedPassword);
+
+    Page<UserDto> getListUsers(String emailPrefix, Role role, Integer page, Integer size, String sort);
 
     User getById(Long id);
 
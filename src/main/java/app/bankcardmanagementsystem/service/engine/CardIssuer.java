@@ -0,0 +1,160 @@
+package app.bankcardmanagementsystem.service.engine;
+
+import app.bankcardmanagementsystem.controller.dto.card.IssueCardsDto;
+import app.bankcardmanagementsystem.entity.CardStatus;
+import app.bankcardmanagementsystem.exception.CreateException;
+import app.bankcardmanagementsystem.exception.NotFoundException;
+import app.bankcardmanagementsystem.utils.CardEncryptionUtil;
+import app.bankcardmanagementsystem.utils.LuhnUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.security.SecureRandom;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.*;
+
+/**
+ * Массовый выпуск карт. Номера генерируются в диапазоне BIN с контрольной цифрой Луна,
+ * шифруются и маскируются параллельно, а вставляются JDBC-пачками в обход Hibernate.
+ * Уникальность проверяется по blind index одним запросом на пачку; совпавшие номера генерируются заново.
+ * Весь выпуск идёт одной транзакцией: партия выпускается целиком или не выпускается вовсе.
+ */
+@Component
+@Slf4j
+public class CardIssuer {
+
+    private static final String INSERT_CARD = """
+            INSERT INTO card (encrypted_card_number, card_number_hash, masked_card_number, card_holder,
+                              expiry_date, status, balance, user_id)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final CardNumberCipher cardNumberCipher;
+    private final CardOwnershipCache cardOwnershipCache;
+    private final String bin;
+    private final int randomDigits;
+    private final long randomBound;
+    private final int batchSize;
+    private final int maxCount;
+    private final Period validity;
+    private final SecureRandom random = new SecureRandom();
+
+    public CardIssuer(JdbcTemplate jdbcTemplate,
+                      NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+                      CardNumberCipher cardNumberCipher,
+                      CardOwnershipCache cardOwnershipCache,
+                      @Value("${card.issuance.bin:220070}") String bin,
+                      @Value("${card.issuance.number-length:16}") int numberLength,
+                      @Value("${card.issuance.batch-size:1000}") int batchSize,
+                      @Value("${card.issuance.max-count:50000}") int maxCount,
+                      @Value("${card.issuance.validity:4y}") Period validity) {
+        if (!bin.chars().allMatch(Character::isDigit) || numberLength - bin.length() - 1 < 6 || numberLength > 19)
+            throw new IllegalArgumentException("card.issuance.bin must be digits leaving at least 6 random digits");
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        this.cardNumberCipher = cardNumberCipher;
+        this.cardOwnershipCache = cardOwnershipCache;
+        this.bin = bin;
+        this.randomDigits = numberLength - bin.length() - 1;
+        this.randomBound = (long) Math.pow(10, randomDigits);
+        this.batchSize = batchSize;
+        this.maxCount = maxCount;
+        this.validity = validity;
+    }
+
+    /**
+     * @return количество выпущенных карт
+     */
+    @Transactional
+    public int issue(IssueCardsDto dto) {
+        List<String> emails = dto.emails() != null ? dto.emails() : List.of();
+        int count = emails.isEmpty() ? (dto.count() != null ? dto.count() : 0) : emails.size();
+        if (count <= 0 || count > maxCount)
+            throw new CreateException("Количество карт в партии должно быть от 1 до " + maxCount);
+
+        LocalDate expiryDate = dto.expiryDate() != null ? dto.expiryDate() : LocalDate.now().plus(validity);
+        if (!expiryDate.isAfter(LocalDate.now()))
+            throw new CreateException("Срок действия карты должен быть в будущем");
+        BigDecimal balance = dto.balance() != null ? dto.balance() : BigDecimal.ZERO;
+
+        Set<String> issuedHashes = new HashSet<>(count * 2);
+        for (int from = 0; from < count; from += batchSize) {
+            int size = Math.min(batchSize, count - from);
+            List<String> batchEmails = emails.isEmpty() ? null : emails.subList(from, from + size);
+            Map<String, Long> owners = batchEmails != null ? findUserIds(batchEmails) : Map.of();
+
+            List<IssuedNumber> numbers = generateUnique(size, issuedHashes);
+            List<Object[]> rows = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                IssuedNumber number = numbers.get(i);
+                String email = batchEmails != null ? batchEmails.get(i) : null;
+                String cardHolder = dto.cardHolder() != null ? dto.cardHolder() : email;
+                rows.add(new Object[]{number.encrypted(), number.hash(), number.masked(), cardHolder,
+                        Date.valueOf(expiryDate), CardStatus.ACTIVE.name(), balance, email != null ? owners.get(email) : null});
+            }
+            jdbcTemplate.batchUpdate(INSERT_CARD, rows);
+        }
+
+        new HashSet<>(emails).forEach(cardOwnershipCache::invalidate);
+        log.info("Issued {} cards", count);
+        return count;
+    }
+
+    private Map<String, Long> findUserIds(List<String> emails) {
+        Map<String, Long> ids = new HashMap<>();
+        namedParameterJdbcTemplate.query("SELECT id, email FROM usr WHERE email IN (:emails)",
+                Map.of("emails", new HashSet<>(emails)),
+                rs -> {
+                    ids.put(rs.getString("email"), rs.getLong("id"));
+                });
+        for (String email : emails)
+            if (!ids.containsKey(email))
+                throw new NotFoundException("User not found: " + email);
+        return ids;
+    }
+
+    /**
+     * Генерирует {@code size} номеров, которых нет ни в БД, ни среди уже выпущенных в этой партии.
+     */
+    private List<IssuedNumber> generateUnique(int size, Set<String> issuedHashes) {
+        List<IssuedNumber> result = new ArrayList<>(size);
+        while (result.size() < size) {
+            List<String> numbers = new ArrayList<>(size - result.size());
+            for (int i = result.size(); i < size; i++)
+                numbers.add(generateNumber());
+
+            // Шифрование и HMAC - основная стоимость выпуска; экземпляры Cipher и Mac у каждого потока свои
+            List<IssuedNumber> candidates = numbers.parallelStream()
+                    .map(number -> new IssuedNumber(cardNumberCipher.encrypt(number), cardNumberCipher.blindIndex(number),
+                            CardEncryptionUtil.maskCard(number)))
+                    .toList();
+
+            Set<String> existing = new HashSet<>(namedParameterJdbcTemplate.queryForList(
+                    "SELECT card_number_hash FROM card WHERE card_number_hash IN (:hashes)",
+                    Map.of("hashes", candidates.stream().map(IssuedNumber::hash).toList()), String.class));
+            for (IssuedNumber candidate : candidates)
+                if (!existing.contains(candidate.hash()) && issuedHashes.add(candidate.hash()))
+                    result.add(candidate);
+        }
+        return result;
+    }
+
+    public String generateNumber() {
+        StringBuilder number = new StringBuilder(bin.length() + randomDigits + 1).append(bin);
+        String digits = Long.toString(random.nextLong(randomBound));
+        number.append("0".repeat(randomDigits - digits.length())).append(digits);
+        return number.append(LuhnUtil.checkDigit(number)).toString();
+    }
+
+    private record IssuedNumber(String encrypted, String hash, String masked) {
+    }
+}
@@ -0,0 +1,135 @@
+package app.bankcardmanagementsystem.service.engine;
+
+import app.bankcardmanagementsystem.entity.LimitCard;
+import app.bankcardmanagementsystem.repository.LimitOnOperationByCardRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Проверка DAY/MONTH лимитов карты по остаткам, закэшированным в памяти.
+ * Кэш используется только для предварительной проверки: источник истины — условное списание
+ * в БД, число изменённых строк которого сверяется с числом лимитов в кэше. Кэш обновляется после
+ * коммита; при расхождении с БД запись карты сбрасывается и перечитывается при следующем обращении.
+ */
+@Component
+public class CardLimitEngine {
+
+    private final LimitOnOperationByCardRepository limitRepository;
+    private final Cache<Long, List<LimitBudget>> budgets;
+
+    public CardLimitEngine(LimitOnOperationByCardRepository limitRepository,
+                           @Value("${limit.cache.max-size:100000}") long maxSize,
+                           @Value("${limit.cache.ttl:60s}") Duration ttl) {
+        this.limitRepository = limitRepository;
+        this.budgets = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public List<LimitBudget> getBudgets(Long cardId) {
+        return budgets.get(cardId, this::load);
+    }
+
+    /**
+     * Перечитывает лимиты карты из БД. Используется перед отказом по лимиту, чтобы не отклонить
+     * операцию из-за устаревшего кэша.
+     */
+    public List<LimitBudget> reload(Long cardId) {
+        List<LimitBudget> loaded = load(cardId);
+        budgets.put(cardId, loaded);
+        return loaded;
+    }
+
+    /**
+     * @return тип первого лимита, остатка которого не хватает на сумму, или {@code null}
+     */
+    public LimitCard findExceeded(List<LimitBudget> cardBudgets, BigDecimal amount) {
+        for (LimitBudget budget : cardBudgets) {
+            if (budget.remaining().compareTo(amount) < 0)
+                return budget.limitCard();
+        }
+        return null;
+    }
+
+    /**
+     * Списывает сумму со всех лимитов карты одним условным UPDATE.
+     * Должен вызываться под блокировкой строки карты, которую берёт списание баланса.
+     * @return {@code null}, если списание прошло, иначе тип лимита, которого не хватило
+     */
+    public LimitCard debit(Long cardId, List<LimitBudget> cardBudgets, BigDecimal amount) {
+        if (cardBudgets.isEmpty())
+            return null;
+
+        int updated = limitRepository.debitRemaining(cardId, amount);
+        if (updated == cardBudgets.size()) {
+            afterCommit(() -> budgets.asMap().computeIfPresent(cardId, (id, current) -> current.stream()
+                    .map(budget -> budget.debit(amount))
+                    .toList()));
+            return null;
+        }
+
+        // Кэш разошёлся с БД: сбрасываем его и решаем по фактическому числу лимитов
+        budgets.invalidate(cardId);
+        afterCompletion(() -> budgets.invalidate(cardId));
+        if (updated == limitRepository.countByCard_Id(cardId))
+            return null;
+        return limitRepository.findLimitTypesBelow(cardId, amount).stream()
+                .findFirst()
+                .orElse(LimitCard.DAY);
+    }
+
+    public void invalidate(Long cardId) {
+        budgets.invalidate(cardId);
+        afterCompletion(() -> budgets.invalidate(cardId));
+    }
+
+    public void invalidateAll() {
+        budgets.invalidateAll();
+    }
+
+    private List<LimitBudget> load(Long cardId) {
+        return limitRepository.findByCard_Id(cardId).stream()
+                .map(limit -> new LimitBudget(limit.getId(), limit.getLimitCard(), limit.getRemainingCrdLimit()))
+                .toList();
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void afterCompletion(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+
+    public record LimitBudget(Long id, LimitCard limitCard, BigDecimal remaining) {
+
+        LimitBudget debit(BigDecimal amount) {
+            return new LimitBudget(id, limitCard, remaining.subtract(amount));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package app.bankcardmanagementsystem.service.engine;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HexFormat;
+
+/**
+ * Шифрование номеров карт AES-256-GCM и blind index (HMAC-SHA256) для поиска по номеру без расшифровки.
+ * Формат шифротекста: {@code v1:} + Base64(IV || ciphertext || tag), IV случайный на каждую запись.
+ * Экземпляры {@link Cipher} и {@link Mac} не потокобезопасны и дороги в создании, поэтому держатся по одному на поток.
+ */
+@Component
+public class CardNumberCipher {
+
+    public static final String VERSION_PREFIX = "v1:";
+
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private final SecretKeySpec encryptionKey;
+    private final SecretKeySpec indexKey;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Cipher> ciphers;
+    private final ThreadLocal<Mac> macs;
+
+    public CardNumberCipher(@Value("${card.encryption.key}") String encryptionKey,
+                            @Value("${card.encryption.index-key}") String indexKey) {
+        this.encryptionKey = new SecretKeySpec(decodeKey(encryptionKey, "card.encryption.key"), "AES");
+        this.indexKey = new SecretKeySpec(decodeKey(indexKey, "card.encryption.index-key"), MAC_ALGORITHM);
+        this.ciphers = ThreadLocal.withInitial(() -> newInstance(() -> Cipher.getInstance(CIPHER_ALGORITHM)));
+        this.macs = ThreadLocal.withInitial(() -> newInstance(() -> {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(this.indexKey);
+            return mac;
+        }));
+    }
+
+    public String encrypt(String cardNumber) {
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_BITS, iv));
+            byte[] plain = normalize(cardNumber).getBytes(StandardCharsets.US_ASCII);
+            ByteBuffer out = ByteBuffer.allocate(IV_LENGTH + cipher.getOutputSize(plain.length)).put(iv);
+            cipher.doFinal(ByteBuffer.wrap(plain), out);
+            return VERSION_PREFIX + Base64.getEncoder().encodeToString(out.array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Card number encryption failed", e);
+        }
+    }
+
+    public String decrypt(String encrypted) {
+        if (!isCurrentFormat(encrypted))
+            throw new IllegalArgumentException("Unsupported card number format");
+        byte[] data = Base64.getDecoder().decode(encrypted.substring(VERSION_PREFIX.length()));
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new GCMParameterSpec(TAG_BITS, data, 0, IV_LENGTH));
+            return new String(cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH), StandardCharsets.US_ASCII);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Card number cannot be decrypted", e);
+        }
+    }
+
+    /**
+     * Детерминированный HMAC номера в hex (64 символа); пробелы и дефисы в номере не влияют на результат.
+     */
+    public String blindIndex(String cardNumber) {
+        return HexFormat.of().formatHex(macs.get().doFinal(normalize(cardNumber).getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    public static boolean isCurrentFormat(String encrypted) {
+        return encrypted != null && encrypted.startsWith(VERSION_PREFIX);
+    }
+
+    private static String normalize(String cardNumber) {
+        String digits = cardNumber.replaceAll("[\\s-]", "");
+        if (digits.isEmpty() || !digits.chars().allMatch(Character::isDigit))
+            throw new IllegalArgumentException("Card number must contain only digits");
+        return digits;
+    }
+
+    private static byte[] decodeKey(String base64, String property) {
+        byte[] key = Base64.getDecoder().decode(base64);
+        if (key.length != 32)
+            throw new IllegalArgumentException(property + " must be a Base64-encoded 256-bit key");
+        return key;
+    }
+
+    private static <T> T newInstance(CryptoSupplier<T> supplier) {
+        try {
+            return supplier.get();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface CryptoSupplier<T> {
+        T get() throws GeneralSecurityException;
+    }
+}
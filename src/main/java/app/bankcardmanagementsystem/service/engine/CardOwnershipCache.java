@@ -0,0 +1,71 @@
+package app.bankcardmanagementsystem.service.engine;
+
+import app.bankcardmanagementsystem.repository.CardRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Кэш id карт пользователя для проверки владения без обращения к БД.
+ * Набор карт загружается одним запросом по логину и сбрасывается при привязке и удалении карты;
+ * TTL ограничивает устаревание между экземплярами приложения.
+ */
+@Component
+public class CardOwnershipCache {
+
+    private final CardRepository cardRepository;
+    private final Cache<String, Set<Long>> ownedCardIds;
+
+    public CardOwnershipCache(CardRepository cardRepository,
+                              @Value("${card.ownership-cache.max-size:10000}") long maxSize,
+                              @Value("${card.ownership-cache.ttl:5m}") Duration ttl) {
+        this.cardRepository = cardRepository;
+        this.ownedCardIds = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public boolean isOwner(String email, Long cardId) {
+        if (email == null || cardId == null)
+            return false;
+        return ownedCardIds.get(email, key -> Set.copyOf(cardRepository.findIdsByUserEmail(key))).contains(cardId);
+    }
+
+    /**
+     * Сбрасывает набор карт пользователя сразу и после завершения транзакции: чтение между ними
+     * может снова закэшировать незакоммиченное состояние. Вызывается внутри транзакции изменения
+     * или после него, иначе повторного сброса не будет.
+     */
+    public void invalidate(String email) {
+        if (email == null)
+            return;
+        afterCompletion(() -> ownedCardIds.invalidate(email));
+    }
+
+    /**
+     * Сбрасывает наборы, в которых есть карта. Владелец удаляемой карты заранее не известен,
+     * поэтому просматривается весь кэш; удаление карт - редкая операция администратора.
+     */
+    public void invalidateCard(Long cardId) {
+        afterCompletion(() -> ownedCardIds.asMap().values().removeIf(ids -> ids.contains(cardId)));
+    }
+
+    private void afterCompletion(Runnable invalidation) {
+        invalidation.run();
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                invalidation.run();
+            }
+        });
+    }
+}
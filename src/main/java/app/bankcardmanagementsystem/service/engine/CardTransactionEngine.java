@@ -0,0 +1,141 @@
+package app.bankcardmanagementsystem.service.engine;
+
+import app.bankcardmanagementsystem.controller.dto.TransactionDto;
+import app.bankcardmanagementsystem.entity.Transaction;
+import app.bankcardmanagementsystem.exception.CreateException;
+import app.bankcardmanagementsystem.service.impl.TransactionServiceImpl;
+import app.bankcardmanagementsystem.service.impl.TransactionServiceImpl.DebitResult;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Движок списаний с одним писателем на карту.
+ * Id карт распределяются по фиксированному набору шардов, у каждого шарда свой поток,
+ * который забирает накопившиеся списания пачкой и фиксирует их одной транзакцией БД (group commit).
+ * Так изменения одной карты никогда не конкурируют между собой за строку в БД.
+ */
+@Component
+@Slf4j
+public class CardTransactionEngine {
+
+    private final TransactionServiceImpl transactionService;
+    @Getter
+    private final boolean enabled;
+    private final int batchSize;
+    private final Shard[] shards;
+
+    public CardTransactionEngine(TransactionServiceImpl transactionService,
+                                 @Value("${transaction.engine.enabled:false}") boolean enabled,
+                                 @Value("${transaction.engine.shards:8}") int shardCount,
+                                 @Value("${transaction.engine.batch-size:64}") int batchSize,
+                                 @Value("${transaction.engine.queue-capacity:10000}") int queueCapacity) {
+        this.transactionService = transactionService;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.shards = new Shard[enabled ? shardCount : 0];
+        for (int i = 0; i < shards.length; i++)
+            shards[i] = new Shard(i, queueCapacity);
+    }
+
+    /**
+     * Ставит списание в очередь шарда карты и ждёт результата group commit.
+     */
+    public Transaction execute(Long cardId, TransactionDto dto) {
+        try {
+            return submit(cardId, dto).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    public CompletableFuture<Transaction> submit(Long cardId, TransactionDto dto) {
+        if (!enabled)
+            throw new IllegalStateException("Card transaction engine is disabled");
+
+        PendingDebit pending = new PendingDebit(cardId, dto, new CompletableFuture<>());
+        if (!shardFor(cardId).queue.offer(pending))
+            throw new CreateException("Очередь обработки транзакций переполнена, повторите запрос позже");
+        return pending.result();
+    }
+
+    private Shard shardFor(Long cardId) {
+        return shards[Math.floorMod(cardId.hashCode(), shards.length)];
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Shard shard : shards)
+            shard.executor.shutdownNow();
+    }
+
+    private void commit(List<PendingDebit> batch) {
+        Map<Long, List<TransactionDto>> debitsByCard = new LinkedHashMap<>();
+        for (PendingDebit pending : batch)
+            debitsByCard.computeIfAbsent(pending.cardId(), id -> new ArrayList<>()).add(pending.dto());
+
+        Map<Long, List<DebitResult>> results;
+        try {
+            results = transactionService.addTransactions(debitsByCard);
+        } catch (RuntimeException e) {
+            log.error("Group commit of {} transactions failed", batch.size(), e);
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+            return;
+        }
+
+        Map<Long, Iterator<DebitResult>> cursors = new HashMap<>();
+        results.forEach((cardId, cardResults) -> cursors.put(cardId, cardResults.iterator()));
+        for (PendingDebit pending : batch) {
+            DebitResult result = cursors.get(pending.cardId()).next();
+            if (result.isSuccess())
+                pending.result().complete(result.transaction());
+            else
+                pending.result().completeExceptionally(result.error());
+        }
+    }
+
+    private record PendingDebit(Long cardId, TransactionDto dto, CompletableFuture<Transaction> result) {
+    }
+
+    private final class Shard {
+
+        private final BlockingQueue<PendingDebit> queue;
+        private final ExecutorService executor;
+
+        private Shard(int index, int queueCapacity) {
+            this.queue = new LinkedBlockingQueue<>(queueCapacity);
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "card-tx-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.execute(this::drainLoop);
+        }
+
+        private void drainLoop() {
+            List<PendingDebit> batch = new ArrayList<>(batchSize);
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                queue.drainTo(batch, batchSize - 1);
+                commit(batch);
+                batch.clear();
+            }
+
+            CancellationException cancelled = new CancellationException("Card transaction engine stopped");
+            batch.forEach(pending -> pending.result().completeExceptionally(cancelled));
+            queue.forEach(pending -> pending.result().completeExceptionally(cancelled));
+        }
+    }
+}
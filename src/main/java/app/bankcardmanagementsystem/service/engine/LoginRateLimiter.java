@@ -0,0 +1,106 @@
+package app.bankcardmanagementsystem.service.engine;
+
+import app.bankcardmanagementsystem.exception.TooManyRequestsException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничение частоты входа и регистрации по логину и по IP клиента.
+ * Каждый ключ - token bucket ёмкостью {@code capacity}, который полностью пополняется за {@code period}.
+ * Состояние корзины - одно число (время, к которому корзина снова станет полной, алгоритм GCRA),
+ * обновляется через CAS без блокировок. Корзины хранятся в Caffeine с ограничением по числу ключей
+ * и удаляются после простоя не короче периода пополнения, т.е. когда они уже снова полные.
+ */
+@Component
+public class LoginRateLimiter {
+
+    private final boolean enabled;
+    private final Limit emailLimit;
+    private final Limit ipLimit;
+    private final Ticker ticker;
+    private final Cache<String, AtomicLong> emailBuckets;
+    private final Cache<String, AtomicLong> ipBuckets;
+
+    @Autowired
+    public LoginRateLimiter(@Value("${auth.rate-limit.enabled:true}") boolean enabled,
+                            @Value("${auth.rate-limit.email.capacity:5}") int emailCapacity,
+                            @Value("${auth.rate-limit.email.period:1m}") Duration emailPeriod,
+                            @Value("${auth.rate-limit.ip.capacity:20}") int ipCapacity,
+                            @Value("${auth.rate-limit.ip.period:1m}") Duration ipPeriod,
+                            @Value("${auth.rate-limit.max-keys:100000}") long maxKeys) {
+        this(enabled, new Limit(emailCapacity, emailPeriod), new Limit(ipCapacity, ipPeriod), maxKeys, Ticker.systemTicker());
+    }
+
+    public LoginRateLimiter(boolean enabled, Limit emailLimit, Limit ipLimit, long maxKeys, Ticker ticker) {
+        this.enabled = enabled;
+        this.emailLimit = emailLimit;
+        this.ipLimit = ipLimit;
+        this.ticker = ticker;
+        this.emailBuckets = buckets(maxKeys, emailLimit.period(), ticker);
+        this.ipBuckets = buckets(maxKeys, ipLimit.period(), ticker);
+    }
+
+    /**
+     * Списывает попытку из корзин IP и логина.
+     *
+     * @throws TooManyRequestsException если одна из корзин пуста; время ожидания - до появления следующей попытки
+     */
+    public void acquire(String email, String clientIp) {
+        if (!enabled)
+            return;
+        if (clientIp != null)
+            check(ipBuckets, ipLimit, clientIp, "Too many login attempts from this address");
+        if (email != null && !email.isBlank())
+            check(emailBuckets, emailLimit, email.trim().toLowerCase(Locale.ROOT), "Too many login attempts for this account");
+    }
+
+    private void check(Cache<String, AtomicLong> buckets, Limit limit, String key, String message) {
+        long now = ticker.read();
+        AtomicLong bucket = buckets.get(key, k -> new AtomicLong(now));
+        long waitNanos = tryConsume(bucket, limit, now);
+        if (waitNanos > 0)
+            throw new TooManyRequestsException(message, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1)));
+    }
+
+    /**
+     * @return 0, если попытка списана, иначе сколько наносекунд ждать следующей
+     */
+    private static long tryConsume(AtomicLong bucket, Limit limit, long now) {
+        long tolerance = limit.period().toNanos();
+        long interval = tolerance / limit.capacity();
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + interval;
+            long overflow = next - now - tolerance;
+            if (overflow > 0)
+                return overflow;
+            if (bucket.compareAndSet(fullAt, next))
+                return 0;
+        }
+    }
+
+    private static Cache<String, AtomicLong> buckets(long maxKeys, Duration period, Ticker ticker) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(period)
+                .ticker(ticker)
+                .build();
+    }
+
+    public record Limit(int capacity, Duration period) {
+
+        public Limit {
+            if (capacity <= 0 || period.isZero() || period.isNegative())
+                throw new IllegalArgumentException("Rate limit capacity and period must be positive");
+        }
+    }
+}
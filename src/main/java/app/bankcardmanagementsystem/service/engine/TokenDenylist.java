@@ -0,0 +1,88 @@
+package app.bankcardmanagementsystem.service.engine;
+
+import app.bankcardmanagementsystem.entity.RevokedToken;
+import app.bankcardmanagementsystem.repository.RevokedTokenRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Denylist access-токенов по логину и времени выпуска. Хранится в памяти и в таблице revoked_token:
+ * при старте загружается целиком, дальше периодически дочитываются отзывы с других узлов.
+ * Граница отзыва округляется вниз до секунды, как и iat токена, поэтому токен, выданный сразу после
+ * отзыва (например, при смене пароля), остаётся действительным.
+ */
+@Component
+@Slf4j
+public class TokenDenylist {
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    // Запас на рассинхронизацию часов узлов и на отзывы, закоммиченные после предыдущего чтения
+    private final Duration refreshOverlap;
+    private final Map<String, LocalDateTime> revokedBefore = new ConcurrentHashMap<>();
+    private volatile LocalDateTime lastRefresh;
+
+    public TokenDenylist(RevokedTokenRepository revokedTokenRepository,
+                         @Value("${jwt.revocation.refresh-overlap:1m}") Duration refreshOverlap) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.refreshOverlap = refreshOverlap;
+    }
+
+    @PostConstruct
+    public void load() {
+        LocalDateTime startedAt = LocalDateTime.now();
+        apply(revokedTokenRepository.findAll());
+        lastRefresh = startedAt;
+    }
+
+    public void refresh() {
+        if (lastRefresh == null) {
+            load();
+            return;
+        }
+        LocalDateTime startedAt = LocalDateTime.now();
+        apply(revokedTokenRepository.findByRevokedBeforeAfter(lastRefresh.minus(refreshOverlap)));
+        lastRefresh = startedAt;
+    }
+
+    /**
+     * Отзывает все access-токены пользователя, выпущенные до текущей секунды.
+     */
+    public void revoke(String subject) {
+        if (subject == null || subject.isEmpty())
+            return;
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        revokedTokenRepository.revoke(subject, now);
+        revokedBefore.merge(subject, now, TokenDenylist::latest);
+    }
+
+    public boolean isRevoked(String subject, Date issuedAt) {
+        LocalDateTime boundary = revokedBefore.get(subject);
+        if (boundary == null)
+            return false;
+        // Без iat нельзя доказать, что токен выпущен после отзыва
+        if (issuedAt == null)
+            return true;
+        return LocalDateTime.ofInstant(issuedAt.toInstant(), ZoneId.systemDefault()).isBefore(boundary);
+    }
+
+    private void apply(List<RevokedToken> revokedTokens) {
+        revokedTokens.forEach(token -> revokedBefore.merge(token.getSubject(), token.getRevokedBefore(), TokenDenylist::latest));
+        if (!revokedTokens.isEmpty())
+            log.debug("Applied {} access token revocations", revokedTokens.size());
+    }
+
+    private static LocalDateTime latest(LocalDateTime first, LocalDateTime second) {
+        return first.isAfter(second) ? first : second;
+    }
+}
@@ -0,0 +1,88 @@
+package app.bankcardmanagementsystem.service.engine;
+
+import app.bankcardmanagementsystem.entity.User;
+import app.bankcardmanagementsystem.repository.UserRepo;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Кэш данных пользователя для аутентификации запросов по access-токену.
+ * Хранит отсоединённый снимок пользователя (без карт) вместе с заранее построенным списком ролей,
+ * поэтому фильтр авторизации в обычном случае не обращается к БД.
+ * Записи сбрасываются при изменении или удалении пользователя, а TTL ограничивает устаревание
+ * между экземплярами приложения.
+ */
+@Component
+public class UserDetailsCache {
+
+    private final UserRepo userRepo;
+    private final Cache<String, AuthenticatedUser> users;
+
+    public UserDetailsCache(UserRepo userRepo,
+                            @Value("${user.details-cache.max-size:10000}") long maxSize,
+                            @Value("${user.details-cache.ttl:5m}") Duration ttl) {
+        this.userRepo = userRepo;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * @return снимок пользователя или {@code null}, если пользователя с таким логином нет
+     */
+    public AuthenticatedUser get(String email) {
+        // Отсутствующий пользователь не кэшируется: null из загрузчика Caffeine не сохраняет
+        return users.get(email, this::load);
+    }
+
+    /**
+     * Сбрасывает запись сразу и ещё раз после завершения транзакции, чтобы параллельный запрос
+     * не закэшировал данные, прочитанные до коммита.
+     */
+    public void invalidate(String email) {
+        users.invalidate(email);
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                users.invalidate(email);
+            }
+        });
+    }
+
+    public void invalidateAll() {
+        users.invalidateAll();
+    }
+
+    private AuthenticatedUser load(String email) {
+        return userRepo.findByEmail(email).map(AuthenticatedUser::of).orElse(null);
+    }
+
+    public record AuthenticatedUser(User user, List<GrantedAuthority> authorities) {
+
+        public static AuthenticatedUser of(User user) {
+            User snapshot = User.builder()
+                    .id(user.getId())
+                    .email(user.getEmail())
+                    .password(user.getPassword())
+                    .roles(user.getRoles() == null ? Set.of() : Set.copyOf(user.getRoles()))
+                    .build();
+            List<GrantedAuthority> authorities = snapshot.getRoles().stream()
+                    .<GrantedAuthority>map(role -> new SimpleGrantedAuthority(role.name()))
+                    .toList();
+            return new AuthenticatedUser(snapshot, authorities);
+        }
+    }
+}
@@ -9,13 +9,14 @@ import app.bankcardmanagementsystem.controller.dto.jwtToken.SigninRequest;
 import app.bankcardmanagementsystem.controller.dto.user.CreateUserDto;
 import app.bankcardmanagementsystem.controller.dto.user.UpdateUserDto;
 import app.bankcardmanagementsystem.entity.User;
+import app.bankcardmanagementsystem.exception.NotFoundException;
 import app.bankcardmanagementsystem.exception.UpdateException;
 import app.bankcardmanagementsystem.mapper.UserMapper;
 import app.bankcardmanagementsystem.service.AuthenticationService;
 import app.bankcardmanagementsystem.service.CookeService;
 import app.bankcardmanagementsystem.service.JWTService;
 import app.bankcardmanagementsystem.service.UserService;
-import app.bankcardmanagementsystem.utils.jwtToken.EncoderPassword;
+import app.bankcardmanagementsystem.service.engine.TokenDenylist;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -25,8 +26,11 @@ import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
@@ -40,6 +44,8 @@ public class AuthenticationServiceImpl implements AuthenticationService {
     private final AuthenticationManager authenticationManager;
     private final JWTService jwtService;
     private final CookeService cookeService;
+    private final TokenDenylist tokenDenylist;
+    private final PasswordEncoder passwordEncoder;
     @Value("${cooke.time.live.refreshToken}")
     private int cookeTimeLive;
 
@@ -52,7 +58,11 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 
         CreateUserDto createUserDto = userMapper.toCreateUserDto(signUpRequest);
         userService.createUser(createUserDto);
-        return signin(new SigninRequest(signUpRequest.password(), signUpRequest.email()));
+        // Пароль только что захэширован при создании, повторная проверка BCrypt через signin не нужна
+        User created = userService.getUserByEmail(signUpRequest.email());
+        if (created == null)
+            throw new AccessDeniedException("User not found");
+        return createJwtAuthenticationResponse(created);
 
     }
 
@@ -78,11 +88,10 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 
         String username = jwtService.getUserNameFromRefreshToken(refreshToken);
         User user = userService.getUserByEmail(username);
-        if (jwtService.isTokenValidRefreshToken(refreshToken, user) && jwtService.getRefreshToken(refreshToken) != null) {
-            createCooke(refreshToken);
+        // Ротация: старый токен погашается, в ответе и в cookie — новая пара токенов
+        if (user != null && jwtService.isTokenValidRefreshToken(refreshToken, user) && jwtService.consumeRefreshToken(refreshToken))
             return createJwtAuthenticationResponse(user);
-        }
-        return null;
+        throw new AuthenticationServiceException("Refresh-токен недействителен");
     }
 
     @Override
@@ -92,16 +101,24 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 
     @Override
     public void logout(String refreshToken, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) throws ServletException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String username = authentication != null && authentication.getPrincipal() instanceof UserDetails principal
+                ? principal.getUsername()
+                : jwtService.getUserNameFromRefreshToken(refreshToken);
         httpServletRequest.logout();
         jwtService.removeRefreshToken(refreshToken);
+        // Отзыв access-токенов действует на все устройства, поэтому завершаются и все сессии
+        tokenDenylist.revoke(username);
+        jwtService.removeAllRefreshTokens(username);
     }
 
     @Override
     public JwtAuthenticationResponse resetPassword(ResetPasswordDto resetPasswordDto) {
-        User authenticationUser = getAuthenticationInfo();
-        if (EncoderPassword.equalsPasswords(resetPasswordDto.getPassword(), authenticationUser.getPassword())) {
-            authenticationUser.setPassword(EncoderPassword.encode(resetPasswordDto.getNewPassword()));
-
+        // Principal — снимок из кэша или из claims токена без пароля, поэтому пользователь читается из БД
+        User authenticationUser = userService.getUserByEmail(getAuthenticationInfo().getUsername());
+        if (authenticationUser == null)
+            throw new NotFoundException("Пользователь не найден");
+        if (passwordEncoder.matches(resetPasswordDto.getPassword(), authenticationUser.getPassword())) {
             UpdateUserDto updateUserDto = UpdateUserDto.builder()
                     .email(authenticationUser.getUsername())
                     .password(resetPasswordDto.getNewPassword())
@@ -109,7 +126,6 @@ public class AuthenticationServiceImpl implements AuthenticationService {
                     .build();
 
             userService.updateDataUser(updateUserDto);
-            authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(authenticationUser.getUsername(), resetPasswordDto.getNewPassword()));
         } else {
             throw new UpdateException("Отправленный пароль и пароль авторизированного пользователя не совпадают. Изменение пароля не произошло");
         }
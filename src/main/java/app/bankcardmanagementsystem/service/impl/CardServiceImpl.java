@@ -1,20 +1,30 @@
 package app.bankcardmanagementsystem.service.impl;
 
 import app.bankcardmanagementsystem.entity.*;
+import app.bankcardmanagementsystem.exception.CreateException;
 import app.bankcardmanagementsystem.exception.NotFoundException;
 import app.bankcardmanagementsystem.repository.CardRepository;
 import app.bankcardmanagementsystem.repository.LimitOnOperationByCardRepository;
 import app.bankcardmanagementsystem.repository.RequestsOnBlockCardRepository;
+import app.bankcardmanagementsystem.repository.projection.CardListRow;
 import app.bankcardmanagementsystem.service.CardService;
 import app.bankcardmanagementsystem.service.UserService;
+import app.bankcardmanagementsystem.service.engine.CardLimitEngine;
+import app.bankcardmanagementsystem.service.engine.CardNumberCipher;
+import app.bankcardmanagementsystem.service.engine.CardOwnershipCache;
 import app.bankcardmanagementsystem.utils.CardEncryptionUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -25,18 +35,35 @@ public class CardServiceImpl implements CardService {
     private final RequestsOnBlockCardRepository requestsOnBlockCardRepository;
     private final LimitOnOperationByCardRepository limitOnOperationByCardRepository;
     private final UserService userService;
+    private final CardLimitEngine cardLimitEngine;
+    private final CardOwnershipCache cardOwnershipCache;
+    private final CardNumberCipher cardNumberCipher;
+    @Value("${card.list.default-page-size:50}")
+    private int listDefaultPageSize;
+    @Value("${card.list.max-page-size:500}")
+    private int listMaxPageSize;
 
     @Override
     public Card createCard(Card card) {
         return cardRepository.save(card);
     }
 
+    /**
+     * Кэш владения сбрасывается и после коммита: иначе параллельный запрос прежнего владельца
+     * может успеть перечитать ещё не изменённую привязку и сохранить доступ к карте до истечения TTL.
+     */
     @Override
+    @Transactional
     public Card assignCardToUser(String login, Long cardId) {
-        Card card = cardRepository.findById(cardId).orElseThrow(() -> new NotFoundException("Card not found"));
-        User userByEmail = userService.getUserByEmail(login);
-        card.setUser(userByEmail);
-        return cardRepository.save(card);
+        // Прежний владелец нужен для сброса его кэша владения, поэтому читается вместе с картой
+        Card card = cardRepository.findWithUserById(cardId).orElseThrow(() -> new NotFoundException("Card not found"));
+        User previousOwner = card.getUser();
+        card.setUser(userService.getUserByEmail(login));
+        Card saved = cardRepository.save(card);
+        if (previousOwner != null)
+            cardOwnershipCache.invalidate(previousOwner.getEmail());
+        cardOwnershipCache.invalidate(login);
+        return saved;
     }
 
     @Override
@@ -54,8 +81,11 @@ public class CardServiceImpl implements CardService {
     }
 
     @Override
+    @Transactional
     public void deleteCard(Long id) {
         cardRepository.deleteById(id);
+        cardLimitEngine.invalidate(id);
+        cardOwnershipCache.invalidateCard(id);
     }
 
     @Override
@@ -63,22 +93,42 @@ public class CardServiceImpl implements CardService {
         return cardRepository.findAll();
     }
 
+    @Override
+    public CardPage getListCards(CardStatus status, Long userId, LocalDate expiresFrom, LocalDate expiresTo, Long cursor, Integer size) {
+        if (expiresFrom != null && expiresTo != null && expiresFrom.isAfter(expiresTo))
+            throw new CreateException("Начало периода позже его конца");
+        int pageSize = size == null || size <= 0 ? listDefaultPageSize : Math.min(size, listMaxPageSize);
+
+        // Берём на одну запись больше, чтобы понять, есть ли следующая страница
+        List<CardListRow> rows = new ArrayList<>(cardRepository.findListRows(cursor != null ? cursor : 0L,
+                status, userId, expiresFrom, expiresTo, Limit.of(pageSize + 1)));
+        if (rows.size() <= pageSize)
+            return new CardPage(rows, null);
+
+        rows.remove(pageSize);
+        return new CardPage(rows, rows.get(pageSize - 1).id());
+    }
+
     @Override
     public List<Card> getAllCardsUser(String email) {
         return cardRepository.findAllByUser_Email(email);
     }
 
+    @Override
+    public Card getCardByNumber(String cardNumber) {
+        return cardRepository.findByCardNumberHash(blindIndex(cardNumber))
+                .orElseThrow(() -> new NotFoundException("Card not found"));
+    }
+
     @Override
     public Card getCard(Long id) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_USER"))) {
-            User userByEmail = userService.getUserByEmail(authentication.getName());
-            if (userByEmail.getCards().stream().anyMatch(card -> card.getId().equals(id)))
-                return cardRepository.findById(id).orElseThrow(() -> new NotFoundException("Card not found"));
-            else throw new SecurityException("Card for current user not found");
-        }
+        // Владение проверяется тем же запросом, которым читается карта
+        if (authentication.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_USER")))
+            return cardRepository.findByIdAndUser_Email(id, authentication.getName())
+                    .orElseThrow(() -> new SecurityException("Card for current user not found"));
 
-        return cardRepository.findById(id).orElseThrow(() -> new NotFoundException("Card not found"));
+        return cardRepository.findWithUserById(id).orElseThrow(() -> new NotFoundException("Card not found"));
     }
 
     @Override
@@ -88,8 +138,9 @@ public class CardServiceImpl implements CardService {
         LocalDateTime startTime = LocalDateTime.now();
         limitOnOperationByCard
                 .setStartPeriud(startTime);
-        limitOnOperationByCard.setEndPeriud(startTime.plusMonths(1));
+        limitOnOperationByCard.setEndPeriud(limitOnOperationByCard.getLimitCard().periodEnd(startTime));
         limitOnOperationByCardRepository.save(limitOnOperationByCard);
+        cardLimitEngine.invalidate(idCard);
     }
 
     @Override
@@ -99,11 +150,27 @@ public class CardServiceImpl implements CardService {
 
     @Override
     public Card encryptedNumberAndMasked(Card card, String cardNumber) {
-        String encrypted = CardEncryptionUtil.encrypt(cardNumber);
+        String hash = blindIndex(cardNumber);
+        // Гонку двух одинаковых вставок закрывает уникальный индекс по card_number_hash.
+        // Старые карты хранили номер как введён, поэтому проверяются и исходная запись, и одни цифры
+        List<String> legacyValues = List.of(CardEncryptionUtil.encodeLegacy(cardNumber),
+                CardEncryptionUtil.encodeLegacy(cardNumber.replaceAll("[\\s-]", "")));
+        if (cardRepository.existsByNumber(hash, legacyValues))
+            throw new CreateException("Card with this number already exists");
+        String encrypted = cardNumberCipher.encrypt(cardNumber);
         String masked = CardEncryptionUtil.maskCard(cardNumber);
         card.setEncryptedCardNumber(encrypted);
+        card.setCardNumberHash(hash);
         card.setMaskedCardNumber(masked);
         return card;
     }
 
+    private String blindIndex(String cardNumber) {
+        try {
+            return cardNumberCipher.blindIndex(cardNumber);
+        } catch (IllegalArgumentException e) {
+            throw new CreateException(e.getMessage());
+        }
+    }
+
 }
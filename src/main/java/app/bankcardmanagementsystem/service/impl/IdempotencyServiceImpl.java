@@ -0,0 +1,110 @@
+package app.bankcardmanagementsystem.service.impl;
+
+import app.bankcardmanagementsystem.controller.dto.TransactionDto;
+import app.bankcardmanagementsystem.entity.Transaction;
+import app.bankcardmanagementsystem.exception.CreateException;
+import app.bankcardmanagementsystem.exception.UpdateException;
+import app.bankcardmanagementsystem.mapper.TransactionMapper;
+import app.bankcardmanagementsystem.repository.IdempotencyKeyRepository;
+import app.bankcardmanagementsystem.service.IdempotencyService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Ключи хранятся в таблице idempotency_key и записываются только выполненными, в той же транзакции БД,
+ * что и само списание: после сбоя не остаётся ни списания без ключа, ни ключа без ответа.
+ * Выполненные запросы дополнительно держатся в LRU-кэше, поэтому повтор обычно обслуживается без обращения к БД.
+ * Одновременные запросы с одним ключом выполняются оба, но второй упирается в уникальный индекс,
+ * откатывается и отвечает результатом первого.
+ */
+@Service
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final TransactionMapper transactionMapper;
+    private final Cache<String, CompletedRequest> completed;
+
+    public IdempotencyServiceImpl(IdempotencyKeyRepository idempotencyKeyRepository,
+                                  TransactionMapper transactionMapper,
+                                  @Value("${idempotency.cache.max-size:100000}") long maxSize,
+                                  @Value("${idempotency.cache.ttl:10m}") Duration ttl) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.transactionMapper = transactionMapper;
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    @Override
+    public TransactionDto execute(String key, String scope, Function<Consumer<Transaction>, Transaction> operation) {
+        if (!IdempotencyService.hasKey(key))
+            return transactionMapper.toDto(operation.apply(transaction -> {
+            }));
+        if (key.length() > MAX_KEY_LENGTH)
+            throw new CreateException("Idempotency-Key не может быть длиннее " + MAX_KEY_LENGTH + " символов");
+
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        String cacheKey = username + '\n' + key;
+
+        CompletedRequest cached = completed.getIfPresent(cacheKey);
+        if (cached != null)
+            return cached.responseFor(scope);
+        Optional<CompletedRequest> stored = findCompleted(username, key);
+        if (stored.isPresent())
+            return remember(cacheKey, stored.get()).responseFor(scope);
+
+        AtomicReference<TransactionDto> response = new AtomicReference<>();
+        try {
+            operation.apply(transaction -> {
+                TransactionDto dto = transactionMapper.toDto(transaction);
+                idempotencyKeyRepository.insertCompleted(username, key, scope, transaction.getId(),
+                        dto.getDescription(), dto.getAmount(), LocalDateTime.now());
+                response.set(dto);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Запрос с тем же ключом зафиксирован раньше; наше списание откатилось вместе с попыткой записать ключ
+            CompletedRequest winner = findCompleted(username, key).orElseThrow(() -> e);
+            return remember(cacheKey, winner).responseFor(scope);
+        }
+
+        if (response.get() == null)
+            throw new IllegalStateException("Operation " + scope + " did not record its Idempotency-Key");
+        return remember(cacheKey, new CompletedRequest(scope, response.get())).responseFor(scope);
+    }
+
+    private Optional<CompletedRequest> findCompleted(String username, String key) {
+        return idempotencyKeyRepository.findByUsernameAndIdempotencyKey(username, key)
+                .map(stored -> new CompletedRequest(stored.getScope(), TransactionDto.builder()
+                        .description(stored.getDescription())
+                        .amount(stored.getAmount())
+                        .build()));
+    }
+
+    private CompletedRequest remember(String cacheKey, CompletedRequest request) {
+        completed.put(cacheKey, request);
+        return request;
+    }
+
+    private record CompletedRequest(String scope, TransactionDto response) {
+
+        TransactionDto responseFor(String requestedScope) {
+            if (!scope.equals(requestedScope))
+                throw new UpdateException("Idempotency-Key уже использован для другой операции");
+            return response;
+        }
+    }
+}
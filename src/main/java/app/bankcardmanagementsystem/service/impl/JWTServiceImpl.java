@@ -1,9 +1,14 @@
 package app.bankcardmanagementsystem.service.impl;
 
+import app.bankcardmanagementsystem.entity.Role;
 import app.bankcardmanagementsystem.entity.TokenJWT;
 import app.bankcardmanagementsystem.entity.User;
 import app.bankcardmanagementsystem.repository.TokenRepo;
 import app.bankcardmanagementsystem.service.JWTService;
+import app.bankcardmanagementsystem.service.engine.UserDetailsCache.AuthenticatedUser;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
@@ -11,16 +16,27 @@ import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.crypto.SecretKey;
-import java.security.SignatureException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -28,19 +44,79 @@ import java.util.function.Function;
 @Getter
 public class JWTServiceImpl implements JWTService {
 
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String ROLES_CLAIM = "roles";
+    private static final Duration REFRESH_TOKEN_LIFETIME = Duration.ofMillis(604800000);
+
     private  final TokenRepo tokenRepo;
     private final SecretKey jwtAccessSecret;
     private final SecretKey jwtRefreshSecret;
-    public JWTServiceImpl(TokenRepo tokenRepo, @Value("${jwt.secret.access}") String jwtAccessSecret, @Value("${jwt.secret.refresh}") String jwtRefreshSecret) {
+    // Парсеры потокобезопасны, поэтому собираются один раз
+    private final JwtParser accessParser;
+    private final JwtParser refreshParser;
+    // Проверенные access-токены по SHA-256 токена; запись живёт до истечения токена, но не дольше maxTtl
+    private final Cache<String, Claims> accessClaimsCache;
+    // SHA-256 недавно погашенных и неизвестных refresh-токенов: повтор такого токена отклоняется без запроса к БД.
+    // Действующие сессии не кэшируются, решение о них всегда принимает БД
+    private final Cache<String, Boolean> revokedRefreshTokens;
+    // Stateless-режим: id и роли пользователя кладутся в access-токен, фильтр не обращается к хранилищу пользователей
+    @Value("${jwt.stateless.enabled:false}")
+    private boolean statelessEnabled;
+
+    public JWTServiceImpl(TokenRepo tokenRepo, String jwtAccessSecret, String jwtRefreshSecret) {
+        this(tokenRepo, jwtAccessSecret, jwtRefreshSecret, 10_000, Duration.ofMinutes(5), 10_000, Duration.ofMinutes(5));
+    }
+
+    @Autowired
+    public JWTServiceImpl(TokenRepo tokenRepo,
+                          @Value("${jwt.secret.access}") String jwtAccessSecret,
+                          @Value("${jwt.secret.refresh}") String jwtRefreshSecret,
+                          @Value("${jwt.claims-cache.max-size:10000}") long claimsCacheMaxSize,
+                          @Value("${jwt.claims-cache.max-ttl:5m}") Duration claimsCacheMaxTtl,
+                          @Value("${jwt.refresh-cache.max-size:10000}") long refreshCacheMaxSize,
+                          @Value("${jwt.refresh-cache.ttl:5m}") Duration refreshCacheTtl) {
         this.tokenRepo = tokenRepo;
         this.jwtAccessSecret = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtAccessSecret));
         this.jwtRefreshSecret = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtRefreshSecret));
+        this.accessParser = Jwts.parserBuilder().setSigningKey(this.jwtAccessSecret).build();
+        this.refreshParser = Jwts.parserBuilder().setSigningKey(this.jwtRefreshSecret).build();
+        this.accessClaimsCache = Caffeine.newBuilder()
+                .maximumSize(claimsCacheMaxSize)
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String key, Claims claims, long currentTime) {
+                        long maxTtl = claimsCacheMaxTtl.toNanos();
+                        if (claims.getExpiration() == null)
+                            return maxTtl;
+                        long untilExpiration = TimeUnit.MILLISECONDS.toNanos(claims.getExpiration().getTime() - System.currentTimeMillis());
+                        return Math.max(0, Math.min(untilExpiration, maxTtl));
+                    }
 
+                    @Override
+                    public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        this.revokedRefreshTokens = Caffeine.newBuilder()
+                .maximumSize(refreshCacheMaxSize)
+                .expireAfterWrite(refreshCacheTtl)
+                .build();
     }
 
     @Override
     public String generateToken(@NonNull UserDetails userDetails){
-        return Jwts.builder()
+        JwtBuilder builder = Jwts.builder();
+        if (statelessEnabled && userDetails instanceof User user && user.getRoles() != null) {
+            builder.claim(USER_ID_CLAIM, user.getId());
+            builder.claim(ROLES_CLAIM, user.getRoles().stream().map(Role::name).toList());
+        }
+        return builder
                 .setSubject(userDetails.getUsername())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis()*1000*60*24))
@@ -52,62 +128,160 @@ public class JWTServiceImpl implements JWTService {
     public String generateRefreshToken(@NonNull HashMap<String, UserDetails> extraClaims, @NonNull UserDetails userDetails) {
         return Jwts.builder()
                 .setClaims(extraClaims)
+                // jti делает токены одного пользователя, выпущенные в одну секунду, различными, иначе совпадут их хэши
+                .setId(UUID.randomUUID().toString())
                 .setSubject(userDetails.getUsername())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis()+604800000))
+                .setExpiration(new Date(System.currentTimeMillis() + REFRESH_TOKEN_LIFETIME.toMillis()))
                 .signWith(jwtRefreshSecret, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    /**
+     * Сохраняет новую сессию. Каждый вход создаёт отдельную запись, поэтому сессий у пользователя может быть несколько.
+     */
     @Override
     @Transactional
     public TokenJWT saveToken(User user, String refreshToken){
-        TokenJWT tokenJWT = tokenRepo.findById(user.getId()).orElse(null);
-        if(tokenJWT!=null){
-            tokenJWT.setRefreshToken(refreshToken);
-            return tokenRepo.save(tokenJWT);
-        }
-        return tokenRepo.save(new TokenJWT(user.getId(),refreshToken,user));
+        Claims claims = getClaims(refreshToken, refreshParser);
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = claims != null && claims.getExpiration() != null
+                ? LocalDateTime.ofInstant(claims.getExpiration().toInstant(), ZoneId.systemDefault())
+                : now.plus(REFRESH_TOKEN_LIFETIME);
+        return tokenRepo.save(TokenJWT.builder()
+                .tokenHash(digest(refreshToken))
+                .user(user)
+                .expiresAt(expiresAt)
+                .createdAt(now)
+                .build());
     }
 
     @Override
     @Transactional
     public TokenJWT getRefreshToken(String refreshToken) {
-        TokenJWT tokenJWT = tokenRepo.findByRefreshToken(refreshToken).orElse(null);//.orElseThrow(() -> new ErrorException("RefreshToken не найден в базе данных"));
-        return tokenJWT;
+        String tokenHash = digest(refreshToken);
+        if (revokedRefreshTokens.getIfPresent(tokenHash) != null)
+            return null;
+        return tokenRepo.findByTokenHash(tokenHash)
+                .filter(token -> token.getExpiresAt().isAfter(LocalDateTime.now()))
+                .orElse(null);
+    }
+
+    /**
+     * Погашает refresh-токен для ротации. Решение принимает удаление в БД, а не кэш, поэтому
+     * один токен может быть обменян только один раз даже при параллельных запросах на разных узлах.
+     * Кэш только отсекает повторы уже погашенных или неизвестных токенов: новые хэши в него не попадают,
+     * пока их не отклонит БД.
+     */
+    @Override
+    @Transactional
+    public boolean consumeRefreshToken(String refreshToken) {
+        String tokenHash = digest(refreshToken);
+        if (revokedRefreshTokens.getIfPresent(tokenHash) != null)
+            return false;
+        boolean consumed = tokenRepo.deleteByTokenHash(tokenHash) > 0;
+        revokedRefreshTokens.put(tokenHash, Boolean.TRUE);
+        return consumed;
     }
 
     @Override
     @Transactional
     public void removeRefreshToken(String refreshToken){
-        tokenRepo.deleteByRefreshToken(refreshToken);
+        String tokenHash = digest(refreshToken);
+        tokenRepo.deleteByTokenHash(tokenHash);
+        revokedRefreshTokens.put(tokenHash, Boolean.TRUE);
+    }
+
+    /**
+     * Вызывается вместе с отзывом access-токенов в {@code TokenDenylist}: иначе сессии, открытые до смены пароля
+     * или ролей, продолжали бы выпускать новые access-токены.
+     */
+    @Override
+    @Transactional
+    public void removeAllRefreshTokens(String username) {
+        if (username == null || username.isEmpty())
+            return;
+        tokenRepo.deleteByUserEmail(username).forEach(tokenHash -> revokedRefreshTokens.put(tokenHash, Boolean.TRUE));
     }
 
     @Override
     public String getUserNameFromAccessToken(@NonNull String token) {
-        return extractClaim(token,jwtAccessSecret,Claims::getSubject);
+        Claims claims = getAccessClaims(token);
+        return claims != null ? claims.getSubject() : null;
+    }
+
+    @Override
+    public Claims getAccessTokenClaims(@NonNull String token) {
+        return getAccessClaims(token);
+    }
+
+    @Override
+    public AuthenticatedUser getAuthenticatedUser(@NonNull Claims claims) {
+        if (!statelessEnabled)
+            return null;
+        Number userId = claims.get(USER_ID_CLAIM, Number.class);
+        List<?> roles = claims.get(ROLES_CLAIM, List.class);
+        if (userId == null || roles == null)
+            return null;
+
+        return AuthenticatedUser.of(User.builder()
+                .id(userId.longValue())
+                .email(claims.getSubject())
+                .roles(roles.stream().map(role -> Role.valueOf(role.toString())).collect(Collectors.toSet()))
+                .build());
     }
 
     @Override
     public String getUserNameFromRefreshToken(@NonNull String token){
-        return extractClaim(token,jwtRefreshSecret,Claims::getSubject);
+        return extractClaim(token,refreshParser,Claims::getSubject);
     }
 
     @Override
     public String extractUserName(@NonNull String token, @NonNull SecretKey secretKey) {
-        return extractClaim(token,secretKey,Claims::getSubject);
+        if (secretKey.equals(jwtAccessSecret))
+            return getUserNameFromAccessToken(token);
+        return extractClaim(token,parserFor(secretKey),Claims::getSubject);
+    }
+
+    private JwtParser parserFor(SecretKey secretKey) {
+        if (secretKey.equals(jwtAccessSecret))
+            return accessParser;
+        if (secretKey.equals(jwtRefreshSecret))
+            return refreshParser;
+        return Jwts.parserBuilder().setSigningKey(secretKey).build();
+    }
+
+    /**
+     * Подпись access-токена проверяется один раз, дальше claims берутся из кэша до истечения токена.
+     */
+    private Claims getAccessClaims(@NonNull String token) {
+        String digest = digest(token);
+        Claims cached = accessClaimsCache.getIfPresent(digest);
+        if (cached != null)
+            return cached;
+
+        Claims claims = getClaims(token, accessParser);
+        if (claims != null)
+            accessClaimsCache.put(digest, claims);
+        return claims;
+    }
+
+    private String digest(String token) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    private <T> T extractClaim(@NonNull String token,@NonNull SecretKey secretKey, Function<Claims,T> claimsResolvers){
-        final Claims claims= getClaims(token,secretKey);
-        return claimsResolvers.apply(claims);
+    private <T> T extractClaim(@NonNull String token,@NonNull JwtParser parser, Function<Claims,T> claimsResolvers){
+        final Claims claims= getClaims(token,parser);
+        return claims != null ? claimsResolvers.apply(claims) : null;
     }
 
-    private Claims getClaims(@NonNull String token, @NonNull SecretKey secretKey) {
+    private Claims getClaims(@NonNull String token, @NonNull JwtParser parser) {
         try {
-          return   Jwts.parserBuilder()
-                    .setSigningKey(secretKey)
-                    .build()
+          return parser
                     .parseClaimsJws(token)
                     .getBody();
         }
@@ -125,18 +299,18 @@ public class JWTServiceImpl implements JWTService {
 
     @Override
     public boolean isTokenValidAccessToken(@NonNull String token, @NonNull UserDetails userDetails){
-        final String username =getUserNameFromAccessToken(token);
-        return (username.equals(userDetails.getUsername())&&!isTokenExpired(token,jwtAccessSecret));
+        return isValid(getAccessClaims(token), userDetails);
     }
 
     @Override
     public boolean isTokenValidRefreshToken(@NonNull String token, @NonNull UserDetails userDetails){
-        final String username =getUserNameFromRefreshToken(token);
-        return (username.equals(userDetails.getUsername())&&!isTokenExpired(token,jwtRefreshSecret));
+        return isValid(getClaims(token, refreshParser), userDetails);
     }
 
-    private boolean isTokenExpired(@NonNull String token,@NonNull SecretKey secretKey) {
-      return  extractClaim(token,secretKey, Claims::getExpiration).before(new Date());
+    private boolean isValid(Claims claims, UserDetails userDetails) {
+        return claims != null
+                && userDetails.getUsername().equals(claims.getSubject())
+                && (claims.getExpiration() == null || !claims.getExpiration().before(new Date()));
     }
 
 }
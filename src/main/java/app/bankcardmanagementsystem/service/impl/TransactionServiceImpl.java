@@ -1,103 +1,442 @@
 package app.bankcardmanagementsystem.service.impl;
 
+import app.bankcardmanagementsystem.controller.dto.CardTransactionDto;
 import app.bankcardmanagementsystem.controller.dto.TransactionDto;
 import app.bankcardmanagementsystem.controller.dto.TransferRequestDto;
 import app.bankcardmanagementsystem.entity.Card;
+import app.bankcardmanagementsystem.entity.CardDailyAggregate;
+import app.bankcardmanagementsystem.entity.CardStatus;
 import app.bankcardmanagementsystem.entity.LimitCard;
-import app.bankcardmanagementsystem.entity.LimitOnOperationByCard;
 import app.bankcardmanagementsystem.entity.Transaction;
+import app.bankcardmanagementsystem.entity.TransactionDirection;
 import app.bankcardmanagementsystem.exception.CreateException;
 import app.bankcardmanagementsystem.exception.NotFoundException;
+import app.bankcardmanagementsystem.repository.CardDailyAggregateRepository;
 import app.bankcardmanagementsystem.repository.CardRepository;
-import app.bankcardmanagementsystem.repository.LimitOnOperationByCardRepository;
 import app.bankcardmanagementsystem.repository.TransactionRepository;
+import app.bankcardmanagementsystem.repository.projection.TransactionExportRow;
+import app.bankcardmanagementsystem.service.engine.CardLimitEngine;
+import app.bankcardmanagementsystem.service.engine.CardLimitEngine.LimitBudget;
+import app.bankcardmanagementsystem.service.engine.CardOwnershipCache;
+import app.bankcardmanagementsystem.utils.TransactionCursor;
+import app.bankcardmanagementsystem.utils.TransactionExportFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
+@Slf4j
 @RequiredArgsConstructor
 public class TransactionServiceImpl {
 
+    private static final LocalDateTime HISTORY_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final String CARD_EXPIRED = "Срок действия карты истёк, операция по карте невозможна";
+    private static final String NON_POSITIVE_AMOUNT = "Сумма транзакции должна быть больше нуля";
+
     private final TransactionRepository transactionRepository;
-    private final LimitOnOperationByCardRepository limitOnOperationByCardRepository;
     private final CardRepository cardRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final CardLimitEngine cardLimitEngine;
+    private final CardDailyAggregateRepository cardDailyAggregateRepository;
+    private final ObjectMapper objectMapper;
+    private final CardOwnershipCache cardOwnershipCache;
+    @Value("${transaction.batch.max-size:5000}")
+    private int batchMaxSize;
+    @Value("${transaction.history.default-page-size:50}")
+    private int historyDefaultPageSize;
+    @Value("${transaction.history.max-page-size:500}")
+    private int historyMaxPageSize;
+    @Value("${transaction.summary.max-days:366}")
+    private int summaryMaxDays;
+    @Value("${transaction.transfer.max-attempts:5}")
+    private int transferMaxAttempts;
+    @Value("${transaction.transfer.retry-backoff-ms:20}")
+    private long transferRetryBackoffMs;
 
+    /**
+     * Лимиты карты проверяются по кэшу {@link CardLimitEngine} до любых изменений в БД,
+     * затем баланс и лимиты списываются условными UPDATE.
+     */
     @Transactional
     public Transaction addTransaction(Long cardId, TransactionDto dto) {
-        Card card = cardRepository.findById(cardId).orElseThrow(()-> new NotFoundException("Card not found with id: " + cardId));
-        BigDecimal amountAfterPurchase = card.getBalance().subtract(dto.getAmount());
-        if (amountAfterPurchase.compareTo(BigDecimal.ZERO) < 0)
-            throw new CreateException("Недостаточно средств на балансе, необходимо пополнить баланс на сумму: " + amountAfterPurchase.abs());
+        return addTransaction(cardId, dto, transaction -> {
+        });
+    }
 
-        List<LimitOnOperationByCard> limitOnOperationByCards = limitOnOperationByCardRepository.findByCard_Id(cardId);
+    /**
+     * @param inTransaction вызывается с сохранённой транзакцией внутри той же транзакции БД, что и списание
+     *                      (например, для записи ключа идемпотентности); ошибка в нём откатывает списание
+     */
+    @Transactional
+    public Transaction addTransaction(Long cardId, TransactionDto dto, Consumer<Transaction> inTransaction) {
+        if (!isPositive(dto.getAmount()))
+            throw new CreateException(NON_POSITIVE_AMOUNT);
 
-        limitOnOperationByCards.forEach(limitOnOperationByCard -> {
+        List<LimitBudget> budgets = cardLimitEngine.getBudgets(cardId);
+        if (cardLimitEngine.findExceeded(budgets, dto.getAmount()) != null) {
+            budgets = cardLimitEngine.reload(cardId);
+            LimitCard exceeded = cardLimitEngine.findExceeded(budgets, dto.getAmount());
+            if (exceeded != null)
+                throw limitExceeded(exceeded);
+        }
 
-            BigDecimal balanceAfterTransaction = limitOnOperationByCard.getRemainingCrdLimit().subtract(dto.getAmount());
-            if (limitOnOperationByCard.getLimitCard().equals(LimitCard.DAY) && balanceAfterTransaction.compareTo(BigDecimal.ZERO) < 0) {
-                throw new CreateException("Выход за рамки дневного бюджета, транзакция отменена");
-            } else {
-                limitOnOperationByCard.setRemainingCrdLimit(limitOnOperationByCard.getRemainingCrdLimit().subtract(dto.getAmount()));
-                limitOnOperationByCardRepository.save(limitOnOperationByCard);
-            }
+        if (cardRepository.debit(cardId, dto.getAmount()) == 0)
+            throw debitRejected(cardId, dto.getAmount());
 
-            if (limitOnOperationByCard.getLimitCard().equals(LimitCard.MONTH) && balanceAfterTransaction.compareTo(BigDecimal.ZERO) < 0) {
-                throw new CreateException("Выход за рамки месячного бюджета, транзакция отменена");
-            } else {
-                limitOnOperationByCard.setRemainingCrdLimit(limitOnOperationByCard.getRemainingCrdLimit().subtract(dto.getAmount()));
-                limitOnOperationByCardRepository.save(limitOnOperationByCard);
-            }
-        });
+        LimitCard exceeded = cardLimitEngine.debit(cardId, budgets, dto.getAmount());
+        if (exceeded != null)
+            throw limitExceeded(exceeded);
 
         Transaction tx = Transaction.builder()
                 .description(dto.getDescription())
                 .amount(dto.getAmount())
                 .timestamp(LocalDateTime.now())
-                .card(card)
+                .card(cardRepository.getReferenceById(cardId))
                 .build();
 
-        card.setBalance(amountAfterPurchase);
-        cardRepository.save(card);
+        cardDailyAggregateRepository.add(cardId, tx.getTimestamp().toLocalDate(), dto.getAmount(), BigDecimal.ZERO, 1);
+        Transaction saved = transactionRepository.save(tx);
+        inTransaction.accept(saved);
+        return saved;
+    }
+
+    /**
+     * Применяет пачку списаний по нескольким картам в одной транзакции БД.
+     * Карты блокируются в порядке возрастания id, баланс и лимиты каждой карты проверяются в памяти
+     * последовательно, поэтому отклонённое списание не мешает остальным. На карту приходится одно
+     * обновление баланса и одно обновление лимитов. Результат возвращается для каждого элемента
+     * в порядке входного списка.
+     */
+    @Transactional
+    public Map<Long, List<DebitResult>> addTransactions(Map<Long, List<TransactionDto>> debitsByCard) {
+        Map<Long, Card> cards = cardRepository.findAllByIdForUpdate(debitsByCard.keySet()).stream()
+                .collect(Collectors.toMap(Card::getId, Function.identity()));
+
+        Map<Long, List<DebitResult>> results = new HashMap<>();
+        List<Transaction> accepted = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+
+        debitsByCard.forEach((cardId, debits) -> {
+            Card card = cards.get(cardId);
+            if (card == null) {
+                NotFoundException notFound = new NotFoundException("Card not found with id: " + cardId);
+                results.put(cardId, debits.stream().map(dto -> DebitResult.failed(notFound)).toList());
+                return;
+            }
+            if (card.getStatus() != CardStatus.ACTIVE) {
+                CreateException inactive = new CreateException("Карта не активна, операция по карте невозможна");
+                results.put(cardId, debits.stream().map(dto -> DebitResult.failed(inactive)).toList());
+                return;
+            }
+            if (isExpired(card, now.toLocalDate())) {
+                CreateException expired = new CreateException(CARD_EXPIRED);
+                results.put(cardId, debits.stream().map(dto -> DebitResult.failed(expired)).toList());
+                return;
+            }
+
+            List<LimitBudget> budgets = cardLimitEngine.getBudgets(cardId);
+            CardDebits cardDebits = evaluate(card, budgets, debits, now);
+            // Отказ по лимиту подтверждаем по свежим данным, чтобы не отклонить операции из-за устаревшего кэша
+            if (cardDebits.limitRejected()) {
+                budgets = cardLimitEngine.reload(cardId);
+                cardDebits = evaluate(card, budgets, debits, now);
+            }
+
+            LimitCard exceeded = debitLimits(cardId, budgets, cardDebits);
+            // Кэш лимитов разошёлся с БД. Списание лимитов «всё или ничего» ничего не изменило,
+            // поэтому карта пересчитывается по свежим лимитам, не затрагивая остальные карты пачки
+            if (exceeded != null) {
+                budgets = cardLimitEngine.reload(cardId);
+                cardDebits = evaluate(card, budgets, debits, now);
+                exceeded = debitLimits(cardId, budgets, cardDebits);
+            }
+            if (exceeded != null) {
+                CreateException rejected = limitExceeded(exceeded);
+                results.put(cardId, debits.stream().map(dto -> DebitResult.failed(rejected)).toList());
+                return;
+            }
+
+            if (!cardDebits.accepted().isEmpty()) {
+                card.setBalance(card.getBalance().subtract(cardDebits.total()));
+                accepted.addAll(cardDebits.accepted());
+                cardDailyAggregateRepository.add(cardId, now.toLocalDate(), cardDebits.total(), BigDecimal.ZERO, cardDebits.accepted().size());
+            }
+            results.put(cardId, cardDebits.results());
+        });
+
+        transactionRepository.saveAll(accepted);
+        return results;
+    }
 
-        return transactionRepository.save(tx);
+    private LimitCard debitLimits(Long cardId, List<LimitBudget> budgets, CardDebits cardDebits) {
+        if (cardDebits.total().signum() == 0)
+            return null;
+        return cardLimitEngine.debit(cardId, budgets, cardDebits.total());
     }
 
+    /**
+     * Последовательно применяет списания карты к её балансу и остаткам лимитов в памяти.
+     */
+    private CardDebits evaluate(Card card, List<LimitBudget> budgets, List<TransactionDto> debits, LocalDateTime now) {
+        List<DebitResult> cardResults = new ArrayList<>(debits.size());
+        List<Transaction> accepted = new ArrayList<>();
+        BigDecimal balance = card.getBalance();
+        BigDecimal total = BigDecimal.ZERO;
+        boolean limitRejected = false;
+
+        for (TransactionDto dto : debits) {
+            if (!isPositive(dto.getAmount())) {
+                cardResults.add(DebitResult.failed(new CreateException(NON_POSITIVE_AMOUNT)));
+                continue;
+            }
+            BigDecimal amountAfterPurchase = balance.subtract(dto.getAmount());
+            if (amountAfterPurchase.compareTo(BigDecimal.ZERO) < 0) {
+                cardResults.add(DebitResult.failed(new CreateException("Недостаточно средств на балансе, необходимо пополнить баланс на сумму: " + amountAfterPurchase.abs())));
+                continue;
+            }
+            LimitCard exceeded = cardLimitEngine.findExceeded(budgets, total.add(dto.getAmount()));
+            if (exceeded != null) {
+                limitRejected = true;
+                cardResults.add(DebitResult.failed(limitExceeded(exceeded)));
+                continue;
+            }
+
+            balance = amountAfterPurchase;
+            total = total.add(dto.getAmount());
+            Transaction tx = Transaction.builder()
+                    .description(dto.getDescription())
+                    .amount(dto.getAmount())
+                    .timestamp(now)
+                    .card(card)
+                    .build();
+            accepted.add(tx);
+            cardResults.add(DebitResult.success(tx));
+        }
+        return new CardDebits(cardResults, accepted, total, limitRejected);
+    }
+
+    /**
+     * Пакетная загрузка транзакций по многим картам. Некорректные элементы отклоняются сразу,
+     * остальные группируются по карте и фиксируются одним вызовом {@link #addTransactions}.
+     * @return результаты в порядке входного списка
+     */
     @Transactional
-    public List<Transaction> getCardTransactions(Long cardId) {
+    public List<DebitResult> addTransactionBatch(List<CardTransactionDto> items) {
+        if (items.size() > batchMaxSize)
+            throw new CreateException("Размер пакета превышает допустимый: " + batchMaxSize);
+
+        DebitResult[] results = new DebitResult[items.size()];
+        Map<Long, List<TransactionDto>> debitsByCard = new LinkedHashMap<>();
+        Map<Long, List<Integer>> indexesByCard = new HashMap<>();
+
+        for (int i = 0; i < items.size(); i++) {
+            CardTransactionDto item = items.get(i);
+            TransactionDto dto = item.transaction();
+            if (item.cardId() == null || dto == null || !isPositive(dto.getAmount())) {
+                results[i] = DebitResult.failed(new CreateException("Не указана карта или сумма транзакции должна быть больше нуля"));
+                continue;
+            }
+            debitsByCard.computeIfAbsent(item.cardId(), id -> new ArrayList<>()).add(dto);
+            indexesByCard.computeIfAbsent(item.cardId(), id -> new ArrayList<>()).add(i);
+        }
+
+        if (!debitsByCard.isEmpty()) {
+            Map<Long, List<DebitResult>> committed = addTransactions(debitsByCard);
+            committed.forEach((cardId, cardResults) -> {
+                List<Integer> indexes = indexesByCard.get(cardId);
+                for (int j = 0; j < cardResults.size(); j++)
+                    results[indexes.get(j)] = cardResults.get(j);
+            });
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Страница истории транзакций карты, от новых к старым.
+     * @param cursor курсор из предыдущей страницы, {@code null} для первой
+     * @param from начало периода включительно, {@code null} — без ограничения
+     * @param to конец периода включительно, {@code null} — текущий момент
+     * @param size размер страницы, ограничен сверху {@code transaction.history.max-page-size}
+     */
+    @Transactional(readOnly = true)
+    public TransactionPage getCardTransactions(Long cardId, String cursor, LocalDateTime from, LocalDateTime to, Integer size) {
+        checkCardAccess(cardId);
+
+        int pageSize = size == null || size <= 0 ? historyDefaultPageSize : Math.min(size, historyMaxPageSize);
+        TransactionCursor after = cursor != null
+                ? TransactionCursor.decode(cursor)
+                : new TransactionCursor(to != null ? to : LocalDateTime.now(), Long.MAX_VALUE);
+        if (cursor != null && to != null && to.isBefore(after.timestamp()))
+            after = new TransactionCursor(to, Long.MAX_VALUE);
+
+        // Берём на одну запись больше, чтобы понять, есть ли следующая страница
+        List<Transaction> transactions = new ArrayList<>(transactionRepository.findPageByCardId(
+                cardId, from != null ? from : HISTORY_START, after.timestamp(), after.id(), Limit.of(pageSize + 1)));
+        if (transactions.size() <= pageSize)
+            return new TransactionPage(transactions, null);
+
+        transactions.remove(pageSize);
+        Transaction last = transactions.get(pageSize - 1);
+        return new TransactionPage(transactions, new TransactionCursor(last.getTimestamp(), last.getId()).encode());
+    }
+
+    /**
+     * Дневные суммы операций карты за период, читаются из card_daily_aggregate.
+     */
+    @Transactional(readOnly = true)
+    public List<CardDailyAggregate> getCardSummary(Long cardId, LocalDate from, LocalDate to) {
+        if (from.isAfter(to))
+            throw new CreateException("Начало периода позже его конца");
+        if (from.plusDays(summaryMaxDays).isBefore(to))
+            throw new CreateException("Период не может быть длиннее " + summaryMaxDays + " дней");
+        checkCardAccess(cardId);
+        return cardDailyAggregateRepository.findByCardIdAndDayBetweenOrderByDay(cardId, from, to);
+    }
+
+    /**
+     * Пишет выписку карты построчно по мере чтения из БД. Строки читаются серверным курсором
+     * и не накапливаются ни в памяти, ни в контексте персистентности.
+     */
+    @Transactional(readOnly = true)
+    public void exportCardTransactions(Long cardId, LocalDateTime from, LocalDateTime to,
+                                       TransactionExportFormat format, OutputStream out) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        try (Stream<TransactionExportRow> rows = transactionRepository.streamForExport(
+                cardId, from != null ? from : HISTORY_START, to != null ? to : LocalDateTime.now())) {
+            if (format == TransactionExportFormat.CSV)
+                writer.write("id,timestamp,amount,description\n");
+            Iterator<TransactionExportRow> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                TransactionExportRow row = iterator.next();
+                writer.write(format == TransactionExportFormat.CSV ? toCsv(row) : objectMapper.writeValueAsString(row));
+                writer.write('\n');
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String toCsv(TransactionExportRow row) {
+        return row.id() + "," + row.timestamp() + "," + row.amount().toPlainString() + "," + csvField(row.description());
+    }
+
+    private String csvField(String value) {
+        if (value == null)
+            return "";
+        // Защита от формул при открытии выписки в табличном редакторе
+        if (!value.isEmpty() && "=+-@".indexOf(value.charAt(0)) >= 0)
+            value = "'" + value;
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r"))
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        return value;
+    }
+
+    /**
+     * Для пользователя владение проверяется по кэшу id его карт, для администратора — только существование карты.
+     */
+    public void checkCardAccess(Long cardId) {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         boolean isAdmin = auth.getAuthorities().stream()
                 .anyMatch(a -> a.getAuthority().equals("ROLE_ADMIN"));
 
-        Card card = cardRepository.findById(cardId).orElseThrow();
+        if (isAdmin) {
+            if (!cardRepository.existsById(cardId))
+                throw new NotFoundException("Card not found with id: " + cardId);
+            return;
+        }
+        if (!cardOwnershipCache.isOwner(auth.getName(), cardId))
+            throw new SecurityException("Access denied: not your card");
+    }
 
-        try {
-            if (!isAdmin && !card.getUser().getEmail().equals(auth.getName())) {
-                throw new SecurityException("Access denied: not your card");
+    /**
+     * Перевод между своими картами. Выполняется одной транзакцией, строки обеих карт блокируются
+     * {@code SELECT ... FOR UPDATE} в порядке возрастания id, поэтому встречные переводы не могут
+     * взаимно заблокироваться. При таймауте блокировки или ошибке сериализации перевод повторяется.
+     */
+    public Transaction transferBetweenOwnCards(TransferRequestDto dto) {
+        return transferBetweenOwnCards(dto, transaction -> {
+        });
+    }
+
+    /**
+     * @param inTransaction вызывается с транзакцией списания внутри транзакции БД каждой попытки перевода
+     */
+    public Transaction transferBetweenOwnCards(TransferRequestDto dto, Consumer<Transaction> inTransaction) {
+        String currentUser = SecurityContextHolder.getContext().getAuthentication().getName();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    Transaction transaction = transfer(dto, currentUser);
+                    inTransaction.accept(transaction);
+                    return transaction;
+                });
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= transferMaxAttempts)
+                    throw e;
+                log.warn("Transfer {} -> {} failed on attempt {}, retrying: {}", dto.fromCardId(), dto.toCardId(), attempt, e.getMessage());
+                backoff(attempt);
             }
-        } catch (Exception e) {
-            throw new SecurityException("Access denied: not your card");
         }
-        return transactionRepository.findByCardId(cardId);
     }
 
-    public Transaction transferBetweenOwnCards(TransferRequestDto dto) {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        String currentUser = auth.getName();
+    private Transaction transfer(TransferRequestDto dto, String currentUser) {
+        if (dto.fromCardId().equals(dto.toCardId()))
+            throw new CreateException("Перевод на ту же карту невозможен");
+        if (!isPositive(dto.amount()))
+            throw new CreateException(NON_POSITIVE_AMOUNT);
 
-        Card fromCard = cardRepository.findById(dto.fromCardId()).orElseThrow(() -> new NotFoundException("Card not found with id: " + dto.fromCardId()));
-        Card toCard = cardRepository.findById(dto.toCardId()).orElseThrow(() -> new NotFoundException("Card not found with id: " + dto.toCardId()));
+        Map<Long, Card> cards = cardRepository.findAllByIdForUpdate(List.of(dto.fromCardId(), dto.toCardId())).stream()
+                .collect(Collectors.toMap(Card::getId, Function.identity()));
+        Card fromCard = cards.get(dto.fromCardId());
+        Card toCard = cards.get(dto.toCardId());
+        if (fromCard == null)
+            throw new NotFoundException("Card not found with id: " + dto.fromCardId());
+        if (toCard == null)
+            throw new NotFoundException("Card not found with id: " + dto.toCardId());
 
-        if (!fromCard.getUser().getEmail().equals(currentUser) || !toCard.getUser().getEmail().equals(currentUser)) {
+        if (!isOwnedBy(fromCard, currentUser) || !isOwnedBy(toCard, currentUser)) {
             throw new CreateException("Access denied: can only transfer between your own cards.");
         }
-
+        if (fromCard.getStatus() != CardStatus.ACTIVE || toCard.getStatus() != CardStatus.ACTIVE) {
+            throw new CreateException("Карта не активна, перевод невозможен");
+        }
+        LocalDate today = LocalDate.now();
+        if (isExpired(fromCard, today) || isExpired(toCard, today)) {
+            throw new CreateException(CARD_EXPIRED);
+        }
         if (fromCard.getBalance().compareTo(dto.amount()) < 0) {
             throw new IllegalArgumentException("Insufficient funds.");
         }
@@ -105,24 +444,89 @@ public class TransactionServiceImpl {
         fromCard.setBalance(fromCard.getBalance().subtract(dto.amount()));
         toCard.setBalance(toCard.getBalance().add(dto.amount()));
 
+        LocalDateTime now = LocalDateTime.now();
         Transaction transaction = Transaction.builder()
                 .description(dto.description() != null ? dto.description() : "Transfer to card " + toCard.getMaskedCardNumber())
                 .amount(dto.amount().negate())
-                .timestamp(LocalDateTime.now())
+                .timestamp(now)
                 .card(fromCard)
                 .build();
 
         Transaction income = Transaction.builder()
                 .description("Incoming transfer from card " + fromCard.getMaskedCardNumber())
                 .amount(dto.amount())
-                .timestamp(LocalDateTime.now())
+                .direction(TransactionDirection.CREDIT)
+                .timestamp(now)
                 .card(toCard)
                 .build();
 
-        cardRepository.save(fromCard);
-        cardRepository.save(toCard);
+        cardDailyAggregateRepository.add(fromCard.getId(), transaction.getTimestamp().toLocalDate(), dto.amount(), BigDecimal.ZERO, 1);
+        cardDailyAggregateRepository.add(toCard.getId(), income.getTimestamp().toLocalDate(), BigDecimal.ZERO, dto.amount(), 1);
         transactionRepository.save(income);
         return transactionRepository.save(transaction);
     }
 
+    /**
+     * Срок действия проверяется по дате, а не по статусу: карта могла истечь до очередного запуска CardExpirySweepJob.
+     */
+    private static boolean isPositive(BigDecimal amount) {
+        return amount != null && amount.signum() > 0;
+    }
+
+    private static boolean isExpired(Card card, LocalDate today) {
+        return card.getExpiryDate() != null && card.getExpiryDate().isBefore(today);
+    }
+
+    private boolean isOwnedBy(Card card, String email) {
+        return card.getUser() != null && card.getUser().getEmail().equals(email);
+    }
+
+    private void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(transferRetryBackoffMs * attempt + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CreateException("Перевод прерван", e);
+        }
+    }
+
+    private CreateException limitExceeded(LimitCard limitCard) {
+        if (limitCard.equals(LimitCard.DAY))
+            return new CreateException("Выход за рамки дневного бюджета, транзакция отменена");
+        return new CreateException("Выход за рамки месячного бюджета, транзакция отменена");
+    }
+
+    /**
+     * Выясняет, почему условное списание не изменило ни одной строки. Вызывается только на пути ошибки.
+     */
+    private RuntimeException debitRejected(Long cardId, BigDecimal amount) {
+        Card card = cardRepository.findById(cardId).orElseThrow(() -> new NotFoundException("Card not found with id: " + cardId));
+        if (card.getStatus() != CardStatus.ACTIVE)
+            return new CreateException("Карта не активна, операция по карте невозможна");
+        if (isExpired(card, LocalDate.now()))
+            return new CreateException(CARD_EXPIRED);
+        return new CreateException("Недостаточно средств на балансе, необходимо пополнить баланс на сумму: " + card.getBalance().subtract(amount).abs());
+    }
+
+    private record CardDebits(List<DebitResult> results, List<Transaction> accepted, BigDecimal total, boolean limitRejected) {
+    }
+
+    public record TransactionPage(List<Transaction> transactions, String nextCursor) {
+    }
+
+    public record DebitResult(Transaction transaction, RuntimeException error) {
+
+        public static DebitResult success(Transaction transaction) {
+            return new DebitResult(transaction, null);
+        }
+
+        public static DebitResult failed(RuntimeException error) {
+            return new DebitResult(null, error);
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
 }
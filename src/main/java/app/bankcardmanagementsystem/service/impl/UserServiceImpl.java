@@ -10,15 +10,27 @@ import app.bankcardmanagementsystem.exception.DeleteException;
 import app.bankcardmanagementsystem.exception.NotFoundException;
 import app.bankcardmanagementsystem.mapper.UserMapper;
 import app.bankcardmanagementsystem.repository.UserRepo;
+import app.bankcardmanagementsystem.repository.projection.UserListRow;
+import app.bankcardmanagementsystem.repository.projection.UserRoleRow;
 import app.bankcardmanagementsystem.service.UserService;
-import app.bankcardmanagementsystem.utils.jwtToken.EncoderPassword;
+import app.bankcardmanagementsystem.service.engine.TokenDenylist;
+import app.bankcardmanagementsystem.service.engine.UserDetailsCache;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 @Service
@@ -26,12 +38,21 @@ import java.util.Set;
 @Slf4j
 @Setter
 @Getter
-@Builder
 public class UserServiceImpl implements UserService {
 
+    private static final Set<String> LIST_SORT_PROPERTIES = Set.of("id", "email");
+    private static final String LIST_SORT_TIEBREAKER = "id";
+
     private final UserRepo userRepo;
     private final UserMapper userMapper;
     private final JWTServiceImpl jwtService;
+    private final UserDetailsCache userDetailsCache;
+    private final TokenDenylist tokenDenylist;
+    private final PasswordEncoder passwordEncoder;
+    @Value("${user.list.default-page-size:50}")
+    private int listDefaultPageSize;
+    @Value("${user.list.max-page-size:500}")
+    private int listMaxPageSize;
 
     @Override
     @Transactional
@@ -46,7 +67,7 @@ public class UserServiceImpl implements UserService {
             throw new CreateException("Пользователь с логином " + createUserDto.email() + " уже существует");
 
         User user = User.builder()
-                .password(EncoderPassword.encode(createUserDto.password()))
+                .password(passwordEncoder.encode(createUserDto.password()))
                 .email(createUserDto.email())
                 .roles(createUserDto.roles())
                 .build();
@@ -58,25 +79,76 @@ public class UserServiceImpl implements UserService {
     @Transactional
     public UserDto updateDataUser(UpdateUserDto updateUserDto) {
         User user = getUserByEmail(updateUserDto.email());
+        boolean credentialsChanged = !user.getRoles().equals(updateUserDto.roles());
 
         user.setRoles(updateUserDto.roles());
 
-        if (!EncoderPassword.equalsPasswords(updateUserDto.password(), user.getPassword()))
-            user.setPassword(EncoderPassword.encode(updateUserDto.password()));
+        if (!passwordEncoder.matches(updateUserDto.password(), user.getPassword())) {
+            user.setPassword(passwordEncoder.encode(updateUserDto.password()));
+            credentialsChanged = true;
+        }
 
         userRepo.save(user);
+        userDetailsCache.invalidate(user.getEmail());
+        // Access-токены с прежними ролями или выданные до смены пароля больше не принимаются,
+        // а прежние сессии не могут выпустить новые
+        if (credentialsChanged) {
+            tokenDenylist.revoke(user.getEmail());
+            jwtService.removeAllRefreshTokens(user.getEmail());
+        }
 
         return userMapper.toDto(userRepo.save(user));
     }
 
+    /**
+     * Сохраняет пересчитанный при входе хэш того же пароля, поэтому токены пользователя не отзываются.
+     */
     @Override
     @Transactional
-    public List<UserDto> getListUsers() {
-        List<User> users = userRepo.findAll();
-        return users.stream().map(user -> {
-            user.setPassword(EncoderPassword.encode(user.getPassword()));
-            return userMapper.toDto(user);
-        }).toList();
+    public UserDetails updatePasswordHash(UserDetails userDetails, String encodedPassword) {
+        User user = userRepo.findByEmail(userDetails.getUsername())
+                .orElseThrow(() -> new NotFoundException("Пользователь с логином " + userDetails.getUsername() + " не найден"));
+        user.setPassword(encodedPassword);
+        userRepo.save(user);
+        userDetailsCache.invalidate(user.getEmail());
+        return user;
+    }
+
+    /**
+     * Страница пользователей для администратора. Читает только id, email и роли (вторым запросом
+     * по id страницы), хэши паролей не загружаются.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Page<UserDto> getListUsers(String emailPrefix, Role role, Integer page, Integer size, String sort) {
+        int pageSize = size == null || size <= 0 ? listDefaultPageSize : Math.min(size, listMaxPageSize);
+        Pageable pageable = PageRequest.of(page == null || page < 0 ? 0 : page, pageSize, parseSort(sort));
+        String emailPattern = emailPrefix == null || emailPrefix.isEmpty() ? null : escapeLike(emailPrefix) + "%";
+
+        Page<UserListRow> rows = userRepo.findListRows(emailPattern, role, pageable);
+        Map<Long, Set<Role>> roles = new HashMap<>();
+        if (rows.hasContent()) {
+            for (UserRoleRow row : userRepo.findRolesByUserIds(rows.map(UserListRow::id).getContent()))
+                roles.computeIfAbsent(row.userId(), id -> EnumSet.noneOf(Role.class)).add(row.role());
+        }
+        return rows.map(row -> new UserDto(row.id(), row.email(), roles.getOrDefault(row.id(), Set.of())));
+    }
+
+    private static Sort parseSort(String sort) {
+        if (sort == null || sort.isBlank())
+            return Sort.by(LIST_SORT_TIEBREAKER);
+        String[] parts = sort.split(",");
+        String property = parts[0].trim();
+        if (!LIST_SORT_PROPERTIES.contains(property))
+            throw new IllegalArgumentException("Сортировка по полю " + property + " не поддерживается");
+        Sort.Direction direction = parts.length > 1 ? Sort.Direction.fromString(parts[1].trim()) : Sort.Direction.ASC;
+        Sort primary = Sort.by(direction, property);
+        // id добавляется для стабильного порядка между страницами
+        return property.equals(LIST_SORT_TIEBREAKER) ? primary : primary.and(Sort.by(LIST_SORT_TIEBREAKER));
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
     }
 
     @Override
@@ -100,7 +172,10 @@ public class UserServiceImpl implements UserService {
     public boolean remove(@NonNull String username) {
         try {
             Long id = getUserByEmail(username).getId();
+            jwtService.removeAllRefreshTokens(username);
             userRepo.deleteById(id);
+            userDetailsCache.invalidate(username);
+            tokenDenylist.revoke(username);
             return true;
         } catch (DeleteException e) {
             log.error("Ошибка удаления пользователя: ", e);
@@ -4,15 +4,21 @@ import java.util.Base64;
 
 public class CardEncryptionUtil {
 
-    public static String encrypt(String cardNumber) {
-        return Base64.getEncoder().encodeToString(cardNumber.getBytes());
+    /**
+     * Разбор старого формата encrypted_card_number (Base64 без шифрования); нужен только для перешифрования.
+     */
+    public static String decodeLegacy(String encrypted) {
+        return new String(Base64.getDecoder().decode(encrypted));
     }
 
-    public static String decrypt(String encrypted) {
-        return new String(Base64.getDecoder().decode(encrypted));
+    /**
+     * Значение номера в старом формате; нужно только для поиска карт, которые ещё не перешифрованы.
+     */
+    public static String encodeLegacy(String cardNumber) {
+        return Base64.getEncoder().encodeToString(cardNumber.getBytes());
     }
 
     public static String maskCard(String cardNumber) {
         return "**** **** **** " + cardNumber.substring(cardNumber.length() - 4);
     }
-}
\ No newline at end of file
+}
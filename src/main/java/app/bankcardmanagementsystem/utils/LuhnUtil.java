@@ -0,0 +1,28 @@
+package app.bankcardmanagementsystem.utils;
+
+public class LuhnUtil {
+
+    /**
+     * Контрольная цифра, которую нужно дописать к {@code payload}, чтобы номер прошёл проверку Луна.
+     */
+    public static int checkDigit(CharSequence payload) {
+        int sum = 0;
+        // Удваивается каждая вторая цифра справа, начиная с последней цифры payload
+        for (int i = payload.length() - 1, position = 0; i >= 0; i--, position++) {
+            int digit = payload.charAt(i) - '0';
+            if (position % 2 == 0) {
+                digit *= 2;
+                if (digit > 9)
+                    digit -= 9;
+            }
+            sum += digit;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    public static boolean isValid(String number) {
+        if (number == null || number.length() < 2 || !number.chars().allMatch(Character::isDigit))
+            return false;
+        return checkDigit(number.substring(0, number.length() - 1)) == number.charAt(number.length() - 1) - '0';
+    }
+}
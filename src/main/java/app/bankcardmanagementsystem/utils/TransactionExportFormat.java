@@ -0,0 +1,30 @@
+package app.bankcardmanagementsystem.utils;
+
+import app.bankcardmanagementsystem.exception.CreateException;
+
+public enum TransactionExportFormat {
+    CSV("text/csv"),
+    NDJSON("application/x-ndjson");
+
+    private final String contentType;
+
+    TransactionExportFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public String fileExtension() {
+        return name().toLowerCase();
+    }
+
+    public static TransactionExportFormat of(String format) {
+        for (TransactionExportFormat value : values()) {
+            if (value.name().equalsIgnoreCase(format))
+                return value;
+        }
+        throw new CreateException("Неподдерживаемый формат выписки: " + format);
+    }
+}
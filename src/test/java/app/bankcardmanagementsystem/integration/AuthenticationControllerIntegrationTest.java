@@ -0,0 +1,113 @@
+package app.bankcardmanagementsystem.integration;
+
+import app.bankcardmanagementsystem.controller.dto.jwtToken.JwtAuthenticationResponse;
+import app.bankcardmanagementsystem.controller.dto.jwtToken.ResetPasswordDto;
+import app.bankcardmanagementsystem.controller.dto.jwtToken.SigninRequest;
+import app.bankcardmanagementsystem.controller.dto.user.CreateUserDto;
+import app.bankcardmanagementsystem.entity.Role;
+import app.bankcardmanagementsystem.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+
+import java.util.Set;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class AuthenticationControllerIntegrationTest {
+
+    private static final String TEST_USER_EMAIL = "session@example.com";
+    private static final String TEST_USER_PASSWORD = "password";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Container
+    public static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("user")
+            .withPassword("password");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        postgres.start();
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        // Настройки для liquibase
+        registry.add("spring.liquibase.url", postgres::getJdbcUrl);
+        registry.add("spring.liquibase.user", postgres::getUsername);
+        registry.add("spring.liquibase.password", postgres::getPassword);
+        registry.add("spring.liquibase.change-log", () -> "db/test-changelog/changelog-master.yml");
+    }
+
+    @BeforeEach
+    public void setup() {
+        userService.createUser(CreateUserDto.builder()
+                .email(TEST_USER_EMAIL)
+                .password(TEST_USER_PASSWORD)
+                .roles(Set.of(Role.ROLE_USER))
+                .build());
+    }
+
+    @Test
+    void refresh_sessionOpenedBeforePasswordReset_shouldBeRejected() throws Exception {
+        // Arrange: две сессии до смены пароля
+        JwtAuthenticationResponse first = signin();
+        JwtAuthenticationResponse second = signin();
+        String reset = mockMvc.perform(post("/api/v1/auth/password/reset")
+                        .header("Authorization", "Bearer " + first.accessToken())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new ResetPasswordDto(TEST_USER_PASSWORD, "new-password"))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        JwtAuthenticationResponse afterReset = objectMapper.readValue(reset, JwtAuthenticationResponse.class);
+
+        // Act & Assert: сессии до смены пароля не обмениваются, новая - обменивается
+        mockMvc.perform(get("/api/v1/auth/refresh")
+                        .header("Authorization", "Bearer " + afterReset.accessToken())
+                        .cookie(new Cookie("refreshToken", second.refreshToken())))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/v1/auth/refresh")
+                        .header("Authorization", "Bearer " + afterReset.accessToken())
+                        .cookie(new Cookie("refreshToken", first.refreshToken())))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/v1/auth/refresh")
+                        .header("Authorization", "Bearer " + afterReset.accessToken())
+                        .cookie(new Cookie("refreshToken", afterReset.refreshToken())))
+                .andExpect(status().isOk());
+    }
+
+    private JwtAuthenticationResponse signin() throws Exception {
+        String response = mockMvc.perform(post("/api/v1/auth/signin")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new SigninRequest(TEST_USER_PASSWORD, TEST_USER_EMAIL))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(response, JwtAuthenticationResponse.class);
+    }
+}
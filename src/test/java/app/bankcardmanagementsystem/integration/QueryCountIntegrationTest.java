@@ -0,0 +1,304 @@
+package app.bankcardmanagementsystem.integration;
+
+import app.bankcardmanagementsystem.controller.dto.CardTransactionDto;
+import app.bankcardmanagementsystem.controller.dto.TransactionDto;
+import app.bankcardmanagementsystem.controller.dto.TransferRequestDto;
+import app.bankcardmanagementsystem.controller.dto.card.CreateCardDto;
+import app.bankcardmanagementsystem.controller.dto.limitOnOperationByCard.CreateLimitOnOperationByCard;
+import app.bankcardmanagementsystem.controller.dto.user.CreateUserDto;
+import app.bankcardmanagementsystem.entity.*;
+import app.bankcardmanagementsystem.mapper.UserMapper;
+import app.bankcardmanagementsystem.repository.CardRepository;
+import app.bankcardmanagementsystem.repository.LimitOnOperationByCardRepository;
+import app.bankcardmanagementsystem.repository.TransactionRepository;
+import app.bankcardmanagementsystem.service.UserService;
+import app.bankcardmanagementsystem.service.engine.UserDetailsCache.AuthenticatedUser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.servlet.http.Cookie;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Ограничивает число SQL-запросов на эндпоинты CardController и AuthenticationController.
+ * У каждого пользователя несколько карт с транзакциями и лимитами, поэтому ленивая загрузка
+ * в цикле (N+1) сразу выходит за бюджет. Запросы считаются по статистике Hibernate,
+ * фоновые задачи отключены, чтобы не попадать в счёт.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "scheduling.enabled=false"
+})
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class QueryCountIntegrationTest {
+
+    private static final int USERS = 3;
+    private static final int CARDS_PER_USER = 3;
+    private static final int TRANSACTIONS_PER_CARD = 5;
+    private static final String PASSWORD = "password";
+    private static final String OWNER_EMAIL = "user0@example.com";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private LimitOnOperationByCardRepository limitRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private Statistics statistics;
+
+    private final List<Long> ownerCardIds = new ArrayList<>();
+
+    private Long ownerId;
+
+    @Container
+    public static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("user")
+            .withPassword("password");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        postgres.start();
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.liquibase.url", postgres::getJdbcUrl);
+        registry.add("spring.liquibase.user", postgres::getUsername);
+        registry.add("spring.liquibase.password", postgres::getPassword);
+        registry.add("spring.liquibase.change-log", () -> "db/test-changelog/changelog-master.yml");
+    }
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        for (int u = 0; u < USERS; u++) {
+            User user = userMapper.toEntity(userService.createUser(CreateUserDto.builder()
+                    .email("user" + u + "@example.com")
+                    .password(PASSWORD)
+                    .roles(Set.of(Role.ROLE_USER))
+                    .build()));
+            if (u == 0)
+                ownerId = user.getId();
+
+            for (int c = 0; c < CARDS_PER_USER; c++) {
+                Card card = cardRepository.save(Card.builder()
+                        .encryptedCardNumber("encrypted-" + u + "-" + c)
+                        .maskedCardNumber("**** **** **** 00" + u + c)
+                        .cardHolder("Ivan Ivanov")
+                        .expiryDate(LocalDate.now().plusYears(2))
+                        .balance(new BigDecimal("100000.00"))
+                        .status(CardStatus.ACTIVE)
+                        .user(user)
+                        .build());
+                if (u == 0)
+                    ownerCardIds.add(card.getId());
+
+                List<Transaction> transactions = new ArrayList<>();
+                for (int t = 0; t < TRANSACTIONS_PER_CARD; t++)
+                    transactions.add(Transaction.builder()
+                            .description("Seed " + t)
+                            .amount(BigDecimal.ONE)
+                            .timestamp(LocalDateTime.now())
+                            .card(card)
+                            .build());
+                transactionRepository.saveAll(transactions);
+
+                LocalDateTime now = LocalDateTime.now();
+                limitRepository.save(LimitOnOperationByCard.builder()
+                        .limitCard(LimitCard.MONTH)
+                        .amount(new BigDecimal("50000.00"))
+                        .remainingCrdLimit(new BigDecimal("50000.00"))
+                        .startPeriud(now)
+                        .endPeriud(LimitCard.MONTH.periodEnd(now))
+                        .card(card)
+                        .build());
+            }
+        }
+    }
+
+    @Test
+    void cardEndpoints_asAdmin_stayWithinStatementBudget() throws Exception {
+        RequestPostProcessor admin = user("admin@example.com").roles("ADMIN");
+        Long cardId = ownerCardIds.get(0);
+
+        assertMaxStatements(1, get("/api/v1/cards").with(admin));
+        assertMaxStatements(1, get("/api/v1/cards")
+                .param("status", CardStatus.ACTIVE.name())
+                .param("userId", String.valueOf(ownerId))
+                .with(admin));
+        assertMaxStatements(1, get("/api/v1/cards/{id}", cardId).with(admin));
+        assertMaxStatements(2, get("/api/v1/cards/{id}/transactions", cardId).with(admin));
+        assertMaxStatements(2, get("/api/v1/cards/{id}/summary", cardId).with(admin));
+        assertMaxStatementsAsync(2, get("/api/v1/cards/{id}/transactions/export", cardId).with(admin));
+
+        // Проверка дубликата по blind index и вставка
+        assertMaxStatements(2, post("/api/v1/cards")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(new CreateCardDto("1234567890123456", "Petr Petrov", LocalDate.now().plusYears(3),
+                        new BigDecimal("500"), CardStatus.ACTIVE)))
+                .with(admin));
+        assertMaxStatements(2, put("/api/v1/cards/{id}/block", cardId).with(admin));
+        assertMaxStatements(2, put("/api/v1/cards/{id}/activate", cardId).with(admin));
+        assertMaxStatements(2, post("/api/v1/cards/{id}/limit", cardId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(new CreateLimitOnOperationByCard(LimitCard.DAY, new BigDecimal("3000"))))
+                .with(admin));
+        assertMaxStatements(3, put("/api/v1/cards/{id}/assign/{email}", ownerCardIds.get(2), "user1@example.com").with(admin));
+
+        // Блокировка строк одним запросом, затем лимиты, агрегат и списание на каждую карту, вставки пачкой
+        assertMaxStatements(11, post("/api/v1/cards/transactions/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(List.of(
+                        new CardTransactionDto(ownerCardIds.get(0), debit("Batch 1")),
+                        new CardTransactionDto(ownerCardIds.get(1), debit("Batch 2")))))
+                .with(admin));
+
+        // Каскадное удаление читает коллекции транзакций и лимитов карты и удаляет их пачкой.
+        // У карты есть транзакции и дневной агрегат от пакетного списания выше; агрегат удаляет каскад в БД
+        assertMaxStatements(6, delete("/api/v1/cards/{id}", ownerCardIds.get(0)).with(admin));
+    }
+
+    @Test
+    void cardEndpoints_asOwner_stayWithinStatementBudget() throws Exception {
+        RequestPostProcessor owner = user(OWNER_EMAIL).roles("USER");
+        Long cardId = ownerCardIds.get(0);
+
+        assertMaxStatements(1, get("/api/v1/cards/{id}", cardId).with(owner));
+        assertMaxStatements(1, get("/api/v1/cards/user").with(owner).requestAttr("login", OWNER_EMAIL));
+        assertMaxStatements(2, get("/api/v1/cards/{id}/transactions", cardId).with(owner));
+        assertMaxStatements(2, get("/api/v1/cards/{id}/summary", cardId).with(owner));
+        assertMaxStatements(2, post("/api/v1/cards/{id}/request/block", cardId).with(owner));
+
+        // Лимиты, списание баланса и лимита, агрегат, последовательность и вставка транзакции
+        assertMaxStatements(7, post("/api/v1/cards/{id}/transactions", cardId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(debit("Payment")))
+                .with(owner));
+
+        // Блокировка обеих карт, владелец, агрегаты, последовательность, вставки и обновления пачкой
+        assertMaxStatements(8, post("/api/v1/cards/transfer")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(new TransferRequestDto(ownerCardIds.get(0), ownerCardIds.get(1), BigDecimal.TEN, "Transfer")))
+                .with(owner));
+    }
+
+    @Test
+    void authEndpoints_stayWithinStatementBudget() throws Exception {
+        assertMaxStatements(6, post("/api/v1/auth/singup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("email", "new@example.com", "password", PASSWORD))));
+        assertMaxStatements(3, signin());
+
+        MvcResult signedIn = mockMvc.perform(signin()).andExpect(status().isOk()).andReturn();
+        Cookie refreshCookie = new Cookie("refreshToken",
+                objectMapper.readTree(signedIn.getResponse().getContentAsString()).get("refreshToken").asText());
+        RequestPostProcessor owner = user(OWNER_EMAIL).roles("USER");
+
+        assertMaxStatements(4, get("/api/v1/auth/refresh").cookie(refreshCookie).with(owner));
+
+        User principal = AuthenticatedUser.of(userService.getUserByEmail(OWNER_EMAIL)).user();
+        // Смена пароля завершает прежние сессии одним DELETE ... RETURNING
+        assertMaxStatements(6, post("/api/v1/auth/password/reset")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("password", PASSWORD, "newPassword", "new-password")))
+                .with(authentication(new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()))));
+
+        MvcResult relogged = mockMvc.perform(post("/api/v1/auth/signin")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("email", OWNER_EMAIL, "password", "new-password"))))
+                .andExpect(status().isOk())
+                .andReturn();
+        Cookie logoutCookie = new Cookie("refreshToken",
+                objectMapper.readTree(relogged.getResponse().getContentAsString()).get("refreshToken").asText());
+        assertMaxStatements(3, post("/api/v1/auth/logout").cookie(logoutCookie).with(owner));
+    }
+
+    private RequestBuilder signin() throws Exception {
+        return post("/api/v1/auth/signin")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("email", OWNER_EMAIL, "password", PASSWORD)));
+    }
+
+    private void assertMaxStatements(long max, RequestBuilder requestBuilder) throws Exception {
+        statistics.clear();
+        MvcResult result = mockMvc.perform(requestBuilder).andExpect(status().isOk()).andReturn();
+        assertBudget(max, result);
+    }
+
+    private void assertMaxStatementsAsync(long max, RequestBuilder requestBuilder) throws Exception {
+        statistics.clear();
+        MvcResult started = mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk()).andReturn();
+        assertBudget(max, result);
+    }
+
+    private void assertBudget(long max, MvcResult result) {
+        assertThat(statistics.getPrepareStatementCount())
+                .as("SQL statements for %s %s", result.getRequest().getMethod(), result.getRequest().getRequestURI())
+                .isLessThanOrEqualTo(max);
+    }
+
+    private static TransactionDto debit(String description) {
+        return TransactionDto.builder()
+                .amount(BigDecimal.TEN)
+                .description(description)
+                .build();
+    }
+
+    private String json(Object value) throws Exception {
+        return objectMapper.writeValueAsString(value);
+    }
+}
@@ -0,0 +1,142 @@
+package app.bankcardmanagementsystem.integration;
+
+import app.bankcardmanagementsystem.controller.dto.TransferRequestDto;
+import app.bankcardmanagementsystem.controller.dto.user.CreateUserDto;
+import app.bankcardmanagementsystem.entity.Card;
+import app.bankcardmanagementsystem.entity.CardStatus;
+import app.bankcardmanagementsystem.entity.Role;
+import app.bankcardmanagementsystem.entity.User;
+import app.bankcardmanagementsystem.mapper.UserMapper;
+import app.bankcardmanagementsystem.repository.CardRepository;
+import app.bankcardmanagementsystem.service.CardService;
+import app.bankcardmanagementsystem.service.UserService;
+import app.bankcardmanagementsystem.service.impl.TransactionServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test")
+// Повторы отключены: взаимная блокировка или таймаут блокировки должны уронить перевод, а не пройти незамеченными
+@SpringBootTest(properties = "transaction.transfer.max-attempts=1")
+public class TransferConcurrencyIntegrationTest {
+
+    private static final String TEST_USER_EMAIL = "stress@example.com";
+    private static final int TRANSFERS = 4000;
+    private static final int THREADS = 16;
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000000.00");
+
+    @Autowired
+    private TransactionServiceImpl transactionService;
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Container
+    public static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15")
+            .withDatabaseName("testdb")
+            .withUsername("user")
+            .withPassword("password");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        postgres.start();
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        // Настройки для liquibase
+        registry.add("spring.liquibase.url", postgres::getJdbcUrl);
+        registry.add("spring.liquibase.user", postgres::getUsername);
+        registry.add("spring.liquibase.password", postgres::getPassword);
+        registry.add("spring.liquibase.change-log", () -> "db/test-changelog/changelog-master.yml");
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> THREADS);
+    }
+
+    @Test
+    void oppositeTransfers_shouldConserveTotalBalanceWithoutDeadlocks() throws Exception {
+        // Arrange: пользователь с двумя картами
+        User user = userMapper.toEntity(userService.createUser(CreateUserDto.builder()
+                .email(TEST_USER_EMAIL)
+                .password("password")
+                .roles(Set.of(Role.ROLE_USER))
+                .build()));
+        Long first = createCard(user).getId();
+        Long second = createCard(user).getId();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(TRANSFERS);
+
+        // Act: половина переводов идёт в одну сторону, половина — во встречную
+        for (int i = 0; i < TRANSFERS; i++) {
+            boolean forward = i % 2 == 0;
+            TransferRequestDto dto = new TransferRequestDto(
+                    forward ? first : second,
+                    forward ? second : first,
+                    BigDecimal.valueOf(1 + i % 7),
+                    "stress " + i);
+            futures.add(executor.submit(() -> {
+                start.await();
+                SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                        TEST_USER_EMAIL, null, List.of(new SimpleGrantedAuthority(Role.ROLE_USER.name()))));
+                try {
+                    return transactionService.transferBetweenOwnCards(dto);
+                } finally {
+                    SecurityContextHolder.clearContext();
+                }
+            }));
+        }
+        start.countDown();
+
+        // Assert: ни один перевод не упал с первой попытки, в том числе из-за взаимной блокировки
+        List<Throwable> failures = new ArrayList<>();
+        for (Future<?> future : futures) {
+            try {
+                future.get(2, TimeUnit.MINUTES);
+            } catch (ExecutionException e) {
+                failures.add(e.getCause());
+            }
+        }
+        executor.shutdown();
+        assertThat(failures).isEmpty();
+
+        BigDecimal total = cardRepository.findById(first).orElseThrow().getBalance()
+                .add(cardRepository.findById(second).orElseThrow().getBalance());
+        assertThat(total).isEqualByComparingTo(INITIAL_BALANCE.add(INITIAL_BALANCE));
+    }
+
+    private Card createCard(User user) {
+        return cardService.createCard(Card.builder()
+                .cardHolder("Stress Test")
+                .expiryDate(LocalDate.now().plusYears(2))
+                .balance(INITIAL_BALANCE)
+                .status(CardStatus.ACTIVE)
+                .user(user)
+                .build());
+    }
+}
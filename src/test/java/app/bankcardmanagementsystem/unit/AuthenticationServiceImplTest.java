@@ -7,13 +7,13 @@ import app.bankcardmanagementsystem.controller.dto.jwtToken.SigninRequest;
 import app.bankcardmanagementsystem.controller.dto.user.CreateUserDto;
 import app.bankcardmanagementsystem.controller.dto.user.UpdateUserDto;
 import app.bankcardmanagementsystem.entity.Role;
-import app.bankcardmanagementsystem.entity.TokenJWT;
 import app.bankcardmanagementsystem.entity.User;
 import app.bankcardmanagementsystem.exception.UpdateException;
 import app.bankcardmanagementsystem.mapper.UserMapper;
 import app.bankcardmanagementsystem.service.CookeService;
 import app.bankcardmanagementsystem.service.JWTService;
 import app.bankcardmanagementsystem.service.UserService;
+import app.bankcardmanagementsystem.service.engine.TokenDenylist;
 import app.bankcardmanagementsystem.service.impl.AuthenticationServiceImpl;
 import app.bankcardmanagementsystem.utils.jwtToken.EncoderPassword;
 import jakarta.servlet.ServletException;
@@ -29,6 +29,7 @@ import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
@@ -36,6 +37,7 @@ import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(SpringExtension.class)
@@ -59,6 +61,9 @@ class AuthenticationServiceImplTest {
     @Mock
     private CookeService cookeService;
 
+    @Mock
+    private TokenDenylist tokenDenylist;
+
     @Mock
     private HttpServletRequest httpServletRequest;
 
@@ -68,7 +73,7 @@ class AuthenticationServiceImplTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        authenticationService = new AuthenticationServiceImpl(userService, userMapper, authenticationManager, jwtService, cookeService);
+        authenticationService = new AuthenticationServiceImpl(userService, userMapper, authenticationManager, jwtService, cookeService, tokenDenylist, new BCryptPasswordEncoder(4));
     }
 
     @Test
@@ -138,7 +143,8 @@ class AuthenticationServiceImplTest {
         when(jwtService.getUserNameFromRefreshToken(refreshToken)).thenReturn("test@example.com");
         when(userService.getUserByEmail("test@example.com")).thenReturn(user);
         when(jwtService.isTokenValidRefreshToken(refreshToken, user)).thenReturn(true);
-        when(jwtService.getRefreshToken(refreshToken)).thenReturn(TokenJWT.builder().refreshToken("new_refresh_token").build());
+        when(jwtService.consumeRefreshToken(refreshToken)).thenReturn(true);
+        when(jwtService.generateRefreshToken(any(), eq(user))).thenReturn("new_refresh_token");
         doNothing().when(cookeService).createCooke(any());
 
 
@@ -147,22 +153,38 @@ class AuthenticationServiceImplTest {
 
         // Assert
         assertThat(response).isNotNull();
-        verify(cookeService, times(2)).createCooke(any());
+        assertThat(response.refreshToken()).isEqualTo("new_refresh_token");
+        verify(jwtService).saveToken(user, "new_refresh_token");
+        verify(cookeService, times(1)).createCooke(any());
+    }
+
+    @Test
+    void refreshToken_alreadyRotatedToken_shouldThrowUnauthorized() {
+        // Arrange
+        String refreshToken = "used_refresh_token";
+        User user = new User();
+        when(jwtService.getUserNameFromRefreshToken(refreshToken)).thenReturn("test@example.com");
+        when(userService.getUserByEmail("test@example.com")).thenReturn(user);
+        when(jwtService.isTokenValidRefreshToken(refreshToken, user)).thenReturn(true);
+        when(jwtService.consumeRefreshToken(refreshToken)).thenReturn(false);
+
+        // Act & Assert
+        assertThatThrownBy(() -> authenticationService.refreshToken(refreshToken, httpServletRequest, httpServletResponse))
+                .isInstanceOf(AuthenticationServiceException.class);
+        verify(jwtService, never()).saveToken(any(), any());
     }
 
     @Test
-    void refreshToken_invalidToken_shouldReturnNull() {
+    void refreshToken_invalidToken_shouldThrowUnauthorized() {
         // Arrange
         String refreshToken = "invalid_refresh_token";
         when(jwtService.getUserNameFromRefreshToken(refreshToken)).thenReturn("test@example.com");
         when(userService.getUserByEmail("test@example.com")).thenReturn(new User());
         when(jwtService.isTokenValidRefreshToken(refreshToken, new User())).thenReturn(false);
 
-        // Act
-        JwtAuthenticationResponse response = authenticationService.refreshToken(refreshToken, httpServletRequest, httpServletResponse);
-
-        // Assert
-        assertThat(response).isNull();
+        // Act & Assert
+        assertThatThrownBy(() -> authenticationService.refreshToken(refreshToken, httpServletRequest, httpServletResponse))
+                .isInstanceOf(AuthenticationServiceException.class);
     }
 
     @Test
@@ -172,6 +194,7 @@ class AuthenticationServiceImplTest {
         User user = new User();
         UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(user, null);
         SecurityContextHolder.getContext().setAuthentication(authentication);
+        when(userService.getUserByEmail(any())).thenReturn(user);
 
         // Act
         User result = authenticationService.getAuthenticationInfo();
@@ -193,6 +216,21 @@ class AuthenticationServiceImplTest {
         verify(jwtService).removeRefreshToken(refreshToken);
     }
 
+    @Test
+    void logout_shouldRevokeAccessTokensOfAuthenticatedUser() throws ServletException {
+        // Arrange
+        User user = new User();
+        user.setEmail("user@example.com");
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(user, null));
+
+        // Act
+        authenticationService.logout("refreshToken", httpServletRequest, httpServletResponse);
+
+        // Assert
+        verify(tokenDenylist).revoke("user@example.com");
+        verify(jwtService).removeAllRefreshTokens("user@example.com");
+    }
+
     @Test
     void resetPassword_correctOldPassword_shouldUpdatePassword() {
         // Arrange
@@ -200,6 +238,7 @@ class AuthenticationServiceImplTest {
         user.setPassword(EncoderPassword.encode("oldPassword"));
         UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(user, null);
         SecurityContextHolder.getContext().setAuthentication(authentication);
+        when(userService.getUserByEmail(any())).thenReturn(user);
 
         ResetPasswordDto resetPasswordDto = new ResetPasswordDto("oldPassword", "newPassword");
 
@@ -218,6 +257,7 @@ class AuthenticationServiceImplTest {
         user.setPassword(EncoderPassword.encode("correctPassword"));
         UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(user, null);
         SecurityContextHolder.getContext().setAuthentication(authentication);
+        when(userService.getUserByEmail(any())).thenReturn(user);
 
         ResetPasswordDto resetPasswordDto = new ResetPasswordDto("wrongPassword", "newPassword");
 
@@ -0,0 +1,93 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.exception.ServiceUnavailableException;
+import app.bankcardmanagementsystem.service.engine.BoundedPasswordEncoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BoundedPasswordEncoderTest {
+
+    private BoundedPasswordEncoder encoder;
+
+    @AfterEach
+    void tearDown() {
+        encoder.shutdown();
+    }
+
+    @Test
+    void encodeAndMatches_shouldDelegateToBCrypt() {
+        // Arrange
+        encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(4), 1, 1, Duration.ofSeconds(5));
+
+        // Act
+        String hash = encoder.encode("password");
+
+        // Assert
+        assertThat(encoder.matches("password", hash)).isTrue();
+        assertThat(encoder.matches("other", hash)).isFalse();
+    }
+
+    @Test
+    void upgradeEncoding_shouldRequestRehashWhenStrengthIncreased() {
+        // Arrange
+        String weakHash = new BCryptPasswordEncoder(4).encode("password");
+        encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(5), 1, 1, Duration.ofSeconds(5));
+
+        // Act & Assert
+        assertThat(encoder.upgradeEncoding(weakHash)).isTrue();
+        assertThat(encoder.upgradeEncoding(encoder.encode("password"))).isFalse();
+    }
+
+    @Test
+    void matches_poolAndQueueBusy_shouldFailFast() throws Exception {
+        // Arrange: единственный поток занят, единственное место в очереди тоже
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder blocking = mock(PasswordEncoder.class);
+        when(blocking.matches(any(), any())).thenAnswer(inv -> {
+            started.countDown();
+            release.await();
+            return true;
+        });
+        encoder = new BoundedPasswordEncoder(blocking, 1, 1, Duration.ofSeconds(5));
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> encoder.matches("a", "hash"));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> encoder.matches("b", "hash"));
+        Thread.sleep(100);
+
+        // Act & Assert
+        assertThatThrownBy(() -> encoder.matches("c", "hash"))
+                .isInstanceOf(ServiceUnavailableException.class);
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void matches_timeout_shouldThrowServiceUnavailable() {
+        // Arrange
+        PasswordEncoder slow = mock(PasswordEncoder.class);
+        when(slow.matches(any(), any())).thenAnswer(inv -> {
+            Thread.sleep(1000);
+            return true;
+        });
+        encoder = new BoundedPasswordEncoder(slow, 1, 1, Duration.ofMillis(50));
+
+        // Act & Assert
+        assertThatThrownBy(() -> encoder.matches("a", "hash"))
+                .isInstanceOf(ServiceUnavailableException.class);
+    }
+}
@@ -0,0 +1,73 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.repository.CardDailyAggregateRepository;
+import app.bankcardmanagementsystem.scheduler.CardDailyAggregateBackfillJob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class CardDailyAggregateBackfillJobTest {
+
+    @InjectMocks
+    private CardDailyAggregateBackfillJob job;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private CardDailyAggregateRepository cardDailyAggregateRepository;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(job, "chunkSize", 100);
+    }
+
+    @Test
+    void backfillChunk_shouldLockAndRecomputeNextCardsAndAdvanceProgress() {
+        // Arrange
+        when(jdbcTemplate.queryForMap(anyString())).thenReturn(Map.of("last_card_id", 0L, "completed", false));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), eq(0L), eq(100))).thenReturn(100L);
+
+        // Act
+        boolean processed = job.backfillChunk();
+
+        // Assert
+        assertThat(processed).isTrue();
+        InOrder inOrder = inOrder(jdbcTemplate, cardDailyAggregateRepository);
+        inOrder.verify(jdbcTemplate).queryForList(contains("FOR UPDATE"), eq(Long.class), eq(0L), eq(100L));
+        inOrder.verify(cardDailyAggregateRepository).recompute(0L, 100L);
+        verify(jdbcTemplate).update(contains("SET last_card_id"), eq(100L));
+    }
+
+    @Test
+    void backfillChunk_noCardsLeft_shouldMarkCompleted() {
+        // Arrange
+        when(jdbcTemplate.queryForMap(anyString())).thenReturn(Map.of("last_card_id", 100L, "completed", false));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), eq(100L), eq(100))).thenReturn(null);
+
+        // Act
+        boolean processed = job.backfillChunk();
+
+        // Assert
+        assertThat(processed).isFalse();
+        verify(jdbcTemplate).update(contains("SET completed = true"));
+        verifyNoInteractions(cardDailyAggregateRepository);
+    }
+}
@@ -0,0 +1,59 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.repository.CardRepository;
+import app.bankcardmanagementsystem.scheduler.CardExpirySweepJob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class CardExpirySweepJobTest {
+
+    private CardRepository cardRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private CardExpirySweepJob job;
+
+    @BeforeEach
+    void setUp() {
+        cardRepository = mock(CardRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        job = new CardExpirySweepJob(cardRepository, meterRegistry);
+        ReflectionTestUtils.setField(job, "chunkSize", 2);
+    }
+
+    @Test
+    void sweep_shouldProcessChunksUntilLastPartialOne() {
+        // Arrange
+        LocalDate today = LocalDate.of(2024, 5, 1);
+        when(cardRepository.expireOverdue(today, 2)).thenReturn(2, 2, 1);
+
+        // Act
+        long total = job.sweep(today);
+
+        // Assert
+        assertThat(total).isEqualTo(5);
+        verify(cardRepository, times(3)).expireOverdue(today, 2);
+        assertThat(meterRegistry.counter("card.expiry.sweep.cards").count()).isEqualTo(5.0);
+    }
+
+    @Test
+    void run_nothingExpired_shouldRecordDurationOnly() {
+        // Arrange
+        when(cardRepository.expireOverdue(any(), anyInt())).thenReturn(0);
+
+        // Act
+        job.run();
+
+        // Assert
+        verify(cardRepository, times(1)).expireOverdue(any(), anyInt());
+        assertThat(meterRegistry.counter("card.expiry.sweep.cards").count()).isZero();
+        assertThat(meterRegistry.timer("card.expiry.sweep.duration").count()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,146 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.controller.dto.card.IssueCardsDto;
+import app.bankcardmanagementsystem.exception.CreateException;
+import app.bankcardmanagementsystem.exception.NotFoundException;
+import app.bankcardmanagementsystem.service.engine.CardIssuer;
+import app.bankcardmanagementsystem.service.engine.CardNumberCipher;
+import app.bankcardmanagementsystem.service.engine.CardOwnershipCache;
+import app.bankcardmanagementsystem.utils.LuhnUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+class CardIssuerTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate = mock(NamedParameterJdbcTemplate.class);
+    private final CardOwnershipCache cardOwnershipCache = mock(CardOwnershipCache.class);
+    private final CardNumberCipher cipher = new CardNumberCipher(
+            "mUCFhYFoscKMQVTxw1TaDZ+c4FoGoqmdzWXPTG2MUG0=", "6acJpb3yMAmuK6lg9dEannX8M5XkZu2RihkP7FkWxl4=");
+    private CardIssuer issuer;
+
+    @BeforeEach
+    void setUp() {
+        issuer = new CardIssuer(jdbcTemplate, namedParameterJdbcTemplate, cipher, cardOwnershipCache,
+                "220070", 16, 1000, 5000, Period.ofYears(4));
+    }
+
+    @Test
+    void generateNumber_shouldStartWithBinAndPassLuhnCheck() {
+        for (int i = 0; i < 1000; i++) {
+            // Act
+            String number = issuer.generateNumber();
+
+            // Assert
+            assertThat(number).hasSize(16).startsWith("220070");
+            assertThat(LuhnUtil.isValid(number)).isTrue();
+        }
+    }
+
+    @Test
+    void luhn_knownNumbers() {
+        assertThat(LuhnUtil.isValid("79927398713")).isTrue();
+        assertThat(LuhnUtil.isValid("4539148803436467")).isTrue();
+        assertThat(LuhnUtil.isValid("4539148803436468")).isFalse();
+        assertThat(LuhnUtil.checkDigit("7992739871")).isEqualTo(3);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void issue_shouldInsertInBatchesWithUniqueNumbers() {
+        // Act
+        int issued = issuer.issue(new IssueCardsDto(2500, null, "Campaign", null, null));
+
+        // Assert
+        assertThat(issued).isEqualTo(2500);
+        ArgumentCaptor<List<Object[]>> batches = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(3)).batchUpdate(startsWith("INSERT INTO card"), batches.capture());
+        List<Object[]> rows = batches.getAllValues().stream().flatMap(List::stream).toList();
+        assertThat(rows).hasSize(2500);
+        assertThat(rows.stream().map(row -> row[1]).distinct()).hasSize(2500);
+        Object[] row = rows.get(0);
+        assertThat((String) row[2]).startsWith("**** **** **** ");
+        assertThat(row[3]).isEqualTo("Campaign");
+        assertThat(row[4]).isEqualTo(java.sql.Date.valueOf(LocalDate.now().plusYears(4)));
+        assertThat(row[6]).isEqualTo(BigDecimal.ZERO);
+        assertThat(row[7]).isNull();
+        assertThat(cipher.blindIndex(cipher.decrypt((String) row[0]))).isEqualTo(row[1]);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void issue_existingNumber_shouldBeRegenerated() {
+        // Arrange: первый сгенерированный номер уже есть в БД
+        when(namedParameterJdbcTemplate.queryForList(anyString(), anyMap(), eq(String.class)))
+                .thenAnswer(invocation -> List.of(((List<String>) ((Map<String, Object>) invocation.getArgument(1)).get("hashes")).get(0)))
+                .thenReturn(List.of());
+
+        // Act
+        issuer.issue(new IssueCardsDto(10, null, null, null, null));
+
+        // Assert
+        verify(namedParameterJdbcTemplate, times(2)).queryForList(anyString(), anyMap(), eq(String.class));
+        ArgumentCaptor<List<Object[]>> batch = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), batch.capture());
+        assertThat(batch.getValue()).hasSize(10);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void issue_withEmails_shouldAssignCardsAndInvalidateOwnership() throws Exception {
+        // Arrange
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(2);
+            for (Map.Entry<String, Long> user : Map.of("a@mail.ru", 1L, "b@mail.ru", 2L).entrySet()) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString("email")).thenReturn(user.getKey());
+                when(rs.getLong("id")).thenReturn(user.getValue());
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(namedParameterJdbcTemplate).query(anyString(), anyMap(), any(RowCallbackHandler.class));
+
+        // Act
+        int issued = issuer.issue(new IssueCardsDto(100, List.of("a@mail.ru", "b@mail.ru"), null, null, new BigDecimal("10")));
+
+        // Assert
+        assertThat(issued).isEqualTo(2);
+        ArgumentCaptor<List<Object[]>> batch = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), batch.capture());
+        assertThat(batch.getValue()).extracting(row -> row[7]).containsExactly(1L, 2L);
+        assertThat(batch.getValue()).extracting(row -> row[3]).containsExactly("a@mail.ru", "b@mail.ru");
+        verify(cardOwnershipCache).invalidate("a@mail.ru");
+        verify(cardOwnershipCache).invalidate("b@mail.ru");
+    }
+
+    @Test
+    void issue_unknownEmail_shouldThrow() {
+        // Act & Assert
+        assertThatThrownBy(() -> issuer.issue(new IssueCardsDto(null, List.of("missing@mail.ru"), null, null, null)))
+                .isInstanceOf(NotFoundException.class);
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void issue_countAboveLimit_shouldThrow() {
+        // Act & Assert
+        assertThatThrownBy(() -> issuer.issue(new IssueCardsDto(5001, null, null, null, null)))
+                .isInstanceOf(CreateException.class);
+        assertThatThrownBy(() -> issuer.issue(new IssueCardsDto(null, null, null, null, null)))
+                .isInstanceOf(CreateException.class);
+    }
+}
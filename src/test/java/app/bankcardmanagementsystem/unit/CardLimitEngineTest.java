@@ -0,0 +1,86 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.entity.LimitCard;
+import app.bankcardmanagementsystem.entity.LimitOnOperationByCard;
+import app.bankcardmanagementsystem.repository.LimitOnOperationByCardRepository;
+import app.bankcardmanagementsystem.service.engine.CardLimitEngine;
+import app.bankcardmanagementsystem.service.engine.CardLimitEngine.LimitBudget;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class CardLimitEngineTest {
+
+    private LimitOnOperationByCardRepository limitRepository;
+    private CardLimitEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        limitRepository = mock(LimitOnOperationByCardRepository.class);
+        engine = new CardLimitEngine(limitRepository, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void getBudgets_shouldLoadOnceAndApplyDebitsInMemory() {
+        // Arrange
+        Long cardId = 1L;
+        when(limitRepository.findByCard_Id(cardId)).thenReturn(List.of(
+                limit(LimitCard.DAY, "100"), limit(LimitCard.MONTH, "1000")));
+        when(limitRepository.debitRemaining(cardId, new BigDecimal("60"))).thenReturn(2);
+
+        // Act
+        List<LimitBudget> budgets = engine.getBudgets(cardId);
+        LimitCard exceeded = engine.debit(cardId, budgets, new BigDecimal("60"));
+
+        // Assert
+        assertThat(exceeded).isNull();
+        assertThat(engine.findExceeded(engine.getBudgets(cardId), new BigDecimal("50"))).isEqualTo(LimitCard.DAY);
+        assertThat(engine.findExceeded(engine.getBudgets(cardId), new BigDecimal("40"))).isNull();
+        verify(limitRepository, times(1)).findByCard_Id(cardId);
+    }
+
+    @Test
+    void debit_limitExceeded_shouldReportExceededLimitAndInvalidate() {
+        // Arrange
+        Long cardId = 1L;
+        BigDecimal amount = new BigDecimal("60");
+        when(limitRepository.findByCard_Id(cardId)).thenReturn(List.of(
+                limit(LimitCard.DAY, "100"), limit(LimitCard.MONTH, "1000")));
+        // Списание «всё или ничего»: при нехватке одного лимита не меняется ни одна строка
+        when(limitRepository.debitRemaining(cardId, amount)).thenReturn(0);
+        when(limitRepository.countByCard_Id(cardId)).thenReturn(2L);
+        when(limitRepository.findLimitTypesBelow(cardId, amount)).thenReturn(List.of(LimitCard.DAY));
+
+        // Act
+        LimitCard exceeded = engine.debit(cardId, engine.getBudgets(cardId), amount);
+        engine.getBudgets(cardId);
+
+        // Assert
+        assertThat(exceeded).isEqualTo(LimitCard.DAY);
+        verify(limitRepository, times(2)).findByCard_Id(cardId);
+    }
+
+    @Test
+    void debit_noLimits_shouldNotTouchDatabase() {
+        // Act
+        LimitCard exceeded = engine.debit(1L, List.of(), BigDecimal.TEN);
+
+        // Assert
+        assertThat(exceeded).isNull();
+        verifyNoInteractions(limitRepository);
+    }
+
+    private LimitOnOperationByCard limit(LimitCard type, String remaining) {
+        return LimitOnOperationByCard.builder()
+                .limitCard(type)
+                .amount(new BigDecimal(remaining))
+                .remainingCrdLimit(new BigDecimal(remaining))
+                .build();
+    }
+}
@@ -0,0 +1,67 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.service.engine.CardNumberCipher;
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CardNumberCipherTest {
+
+    private static final String KEY = "mUCFhYFoscKMQVTxw1TaDZ+c4FoGoqmdzWXPTG2MUG0=";
+    private static final String INDEX_KEY = "6acJpb3yMAmuK6lg9dEannX8M5XkZu2RihkP7FkWxl4=";
+
+    private final CardNumberCipher cipher = new CardNumberCipher(KEY, INDEX_KEY);
+
+    @Test
+    void encrypt_shouldRoundTripWithRandomIv() {
+        // Act
+        String first = cipher.encrypt("1234567812345678");
+        String second = cipher.encrypt("1234 5678 1234 5678");
+
+        // Assert
+        assertThat(first).startsWith(CardNumberCipher.VERSION_PREFIX).isNotEqualTo(second);
+        assertThat(cipher.decrypt(first)).isEqualTo("1234567812345678");
+        assertThat(cipher.decrypt(second)).isEqualTo("1234567812345678");
+    }
+
+    @Test
+    void decrypt_tamperedCiphertext_shouldThrow() {
+        // Arrange
+        byte[] data = Base64.getDecoder().decode(cipher.encrypt("1234567812345678").substring(3));
+        data[data.length - 1] ^= 1;
+
+        // Act & Assert
+        assertThatThrownBy(() -> cipher.decrypt(CardNumberCipher.VERSION_PREFIX + Base64.getEncoder().encodeToString(data)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void blindIndex_shouldBeDeterministicAndKeyed() {
+        // Arrange
+        CardNumberCipher otherKey = new CardNumberCipher(KEY, KEY);
+
+        // Act
+        String index = cipher.blindIndex("1234567812345678");
+
+        // Assert
+        assertThat(index).hasSize(64).isEqualTo(cipher.blindIndex("1234-5678-1234-5678"));
+        assertThat(index).isNotEqualTo(cipher.blindIndex("1234567812345679"));
+        assertThat(index).isNotEqualTo(otherKey.blindIndex("1234567812345678"));
+    }
+
+    @Test
+    void blindIndex_notDigits_shouldThrow() {
+        assertThatThrownBy(() -> cipher.blindIndex("1234abcd"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void constructor_wrongKeyLength_shouldThrow() {
+        assertThatThrownBy(() -> new CardNumberCipher("c2hvcnQ=", INDEX_KEY))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("card.encryption.key");
+    }
+}
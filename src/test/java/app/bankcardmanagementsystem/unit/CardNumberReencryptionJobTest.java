@@ -0,0 +1,94 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.scheduler.CardNumberReencryptionJob;
+import app.bankcardmanagementsystem.scheduler.CardNumberReencryptionJob.Chunk;
+import app.bankcardmanagementsystem.service.engine.CardNumberCipher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CardNumberReencryptionJobTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final CardNumberCipher cipher = new CardNumberCipher(
+            "mUCFhYFoscKMQVTxw1TaDZ+c4FoGoqmdzWXPTG2MUG0=", "6acJpb3yMAmuK6lg9dEannX8M5XkZu2RihkP7FkWxl4=");
+    private CardNumberReencryptionJob job;
+
+    @BeforeEach
+    void setUp() {
+        job = new CardNumberReencryptionJob(jdbcTemplate, mock(TransactionTemplate.class), cipher);
+        ReflectionTestUtils.setField(job, "batchSize", 100);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reencryptChunk_shouldEncryptLegacyNumbersSkipUnreadableAndSaveProgress() {
+        // Arrange
+        String legacy = Base64.getEncoder().encodeToString("1234567812345678".getBytes());
+        when(jdbcTemplate.queryForObject(contains("card_number_reencryption"), eq(Long.class))).thenReturn(0L);
+        when(jdbcTemplate.queryForList(anyString(), eq(0L), eq(100))).thenReturn(List.of(
+                Map.of("id", 1L, "encrypted_card_number", legacy),
+                Map.of("id", 2L, "encrypted_card_number", "not base64!")));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{1});
+
+        // Act
+        Chunk chunk = job.reencryptChunk();
+
+        // Assert
+        assertThat(chunk).isEqualTo(new Chunk(2L, 1));
+        ArgumentCaptor<List<Object[]>> updates = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(contains("NOT EXISTS"), updates.capture());
+        Object[] row = updates.getValue().get(0);
+        assertThat(cipher.decrypt((String) row[0])).isEqualTo("1234567812345678");
+        assertThat(row[1]).isEqualTo(cipher.blindIndex("1234567812345678"));
+        assertThat(row[2]).isEqualTo(1L);
+        assertThat(row[3]).isEqualTo(row[1]);
+        verify(jdbcTemplate).update(contains("SET last_card_id"), eq(2L));
+    }
+
+    @Test
+    void reencryptChunk_duplicateNumber_shouldSkipRowAndStillAdvanceProgress() {
+        // Arrange
+        String legacy = Base64.getEncoder().encodeToString("1234567812345678".getBytes());
+        String duplicate = Base64.getEncoder().encodeToString("1234-5678-1234-5678".getBytes());
+        when(jdbcTemplate.queryForObject(contains("card_number_reencryption"), eq(Long.class))).thenReturn(10L);
+        when(jdbcTemplate.queryForList(anyString(), eq(10L), eq(100))).thenReturn(List.of(
+                Map.of("id", 11L, "encrypted_card_number", legacy),
+                Map.of("id", 12L, "encrypted_card_number", duplicate)));
+        // Вторая строка не обновлена: такой blind index уже записан первой
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{1, 0});
+
+        // Act
+        Chunk chunk = job.reencryptChunk();
+
+        // Assert
+        assertThat(chunk).isEqualTo(new Chunk(12L, 1));
+        verify(jdbcTemplate).update(contains("SET last_card_id"), eq(12L));
+    }
+
+    @Test
+    void reencryptChunk_noCardsLeft_shouldStop() {
+        // Arrange
+        when(jdbcTemplate.queryForObject(contains("card_number_reencryption"), eq(Long.class))).thenReturn(5L);
+        when(jdbcTemplate.queryForList(anyString(), eq(5L), eq(100))).thenReturn(List.of());
+
+        // Act
+        Chunk chunk = job.reencryptChunk();
+
+        // Assert
+        assertThat(chunk.lastId()).isNull();
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+    }
+}
@@ -0,0 +1,73 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.repository.CardRepository;
+import app.bankcardmanagementsystem.service.engine.CardOwnershipCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class CardOwnershipCacheTest {
+
+    private CardRepository cardRepository;
+    private CardOwnershipCache cardOwnershipCache;
+
+    @BeforeEach
+    void setUp() {
+        cardRepository = mock(CardRepository.class);
+        cardOwnershipCache = new CardOwnershipCache(cardRepository, 100, Duration.ofMinutes(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void invalidate_inTransaction_shouldDropSetReloadedBeforeCommit() {
+        // Arrange
+        when(cardRepository.findIdsByUserEmail("old@example.com")).thenReturn(List.of(1L));
+        assertThat(cardOwnershipCache.isOwner("old@example.com", 1L)).isTrue();
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        cardOwnershipCache.invalidate("old@example.com");
+        // Параллельный запрос до коммита ещё видит старую привязку и снова кэширует её
+        when(cardRepository.findIdsByUserEmail("old@example.com")).thenReturn(List.of(1L));
+        boolean beforeCommit = cardOwnershipCache.isOwner("old@example.com", 1L);
+        when(cardRepository.findIdsByUserEmail("old@example.com")).thenReturn(List.of());
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        boolean afterCommit = cardOwnershipCache.isOwner("old@example.com", 1L);
+
+        // Assert
+        assertThat(beforeCommit).isTrue();
+        assertThat(afterCommit).isFalse();
+    }
+
+    @Test
+    void invalidateCard_inTransaction_shouldDropEverySetContainingCardAfterCompletion() {
+        // Arrange
+        when(cardRepository.findIdsByUserEmail("owner@example.com")).thenReturn(List.of(7L));
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        cardOwnershipCache.invalidateCard(7L);
+        cardOwnershipCache.isOwner("owner@example.com", 7L);
+        when(cardRepository.findIdsByUserEmail("owner@example.com")).thenReturn(List.of());
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        // Assert
+        assertThat(cardOwnershipCache.isOwner("owner@example.com", 7L)).isFalse();
+        verify(cardRepository, times(2)).findIdsByUserEmail("owner@example.com");
+    }
+}
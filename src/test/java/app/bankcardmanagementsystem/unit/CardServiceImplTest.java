@@ -1,23 +1,34 @@
 package app.bankcardmanagementsystem.unit;
 
 import app.bankcardmanagementsystem.entity.*;
+import app.bankcardmanagementsystem.exception.CreateException;
 import app.bankcardmanagementsystem.exception.NotFoundException;
 import app.bankcardmanagementsystem.repository.CardRepository;
 import app.bankcardmanagementsystem.repository.LimitOnOperationByCardRepository;
 import app.bankcardmanagementsystem.repository.RequestsOnBlockCardRepository;
+import app.bankcardmanagementsystem.repository.projection.CardListRow;
+import app.bankcardmanagementsystem.service.CardService.CardPage;
 import app.bankcardmanagementsystem.service.UserService;
+import app.bankcardmanagementsystem.service.engine.CardLimitEngine;
+import app.bankcardmanagementsystem.service.engine.CardNumberCipher;
+import app.bankcardmanagementsystem.service.engine.CardOwnershipCache;
 import app.bankcardmanagementsystem.service.impl.CardServiceImpl;
+import app.bankcardmanagementsystem.utils.CardEncryptionUtil;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -41,6 +52,15 @@ class CardServiceImplTest {
     @Mock
     private UserService userService;
 
+    @Mock
+    private CardLimitEngine cardLimitEngine;
+
+    @Mock
+    private CardOwnershipCache cardOwnershipCache;
+
+    @Mock
+    private CardNumberCipher cardNumberCipher;
+
     @Test
     void createCard_success() {
         // Arrange
@@ -60,7 +80,7 @@ class CardServiceImplTest {
         // Arrange
         Card card = new Card();
         User user = new User();
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findWithUserById(1L)).thenReturn(Optional.of(card));
         when(userService.getUserByEmail("test@example.com")).thenReturn(user);
         when(cardRepository.save(card)).thenReturn(card);
 
@@ -72,10 +92,40 @@ class CardServiceImplTest {
         verify(cardRepository).save(card);
     }
 
+    @Test
+    void assignCardToUser_reassigned_invalidatesBothOwners() {
+        // Arrange
+        Card card = Card.builder().id(1L).user(User.builder().email("old@example.com").build()).build();
+        when(cardRepository.findWithUserById(1L)).thenReturn(Optional.of(card));
+        when(userService.getUserByEmail("new@example.com")).thenReturn(User.builder().email("new@example.com").build());
+
+        // Act
+        cardService.assignCardToUser("new@example.com", 1L);
+
+        // Assert
+        InOrder inOrder = inOrder(cardRepository, cardOwnershipCache);
+        inOrder.verify(cardRepository).save(card);
+        inOrder.verify(cardOwnershipCache).invalidate("old@example.com");
+        inOrder.verify(cardOwnershipCache).invalidate("new@example.com");
+    }
+
+    @Test
+    void ownershipChanges_runInTransaction_soCacheIsInvalidatedAfterCommit() throws NoSuchMethodException {
+        // Act
+        boolean assignTransactional = CardServiceImpl.class.getMethod("assignCardToUser", String.class, Long.class)
+                .isAnnotationPresent(Transactional.class);
+        boolean deleteTransactional = CardServiceImpl.class.getMethod("deleteCard", Long.class)
+                .isAnnotationPresent(Transactional.class);
+
+        // Assert
+        assertThat(assignTransactional).isTrue();
+        assertThat(deleteTransactional).isTrue();
+    }
+
     @Test
     void assignCardToUser_cardNotFound() {
         // Arrange
-        when(cardRepository.findById(1L)).thenReturn(Optional.empty());
+        when(cardRepository.findWithUserById(1L)).thenReturn(Optional.empty());
 
         // Act + Assert
         assertThatThrownBy(() -> cardService.assignCardToUser("test@example.com", 1L))
@@ -88,7 +138,7 @@ class CardServiceImplTest {
     void blockCard_success() {
         // Arrange
         Card card = new Card();
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findWithUserById(1L)).thenReturn(Optional.of(card));
         when(cardRepository.save(card)).thenReturn(card);
 
         // Act
@@ -104,7 +154,7 @@ class CardServiceImplTest {
     void activateCard_success() {
         // Arrange
         Card card = new Card();
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findWithUserById(1L)).thenReturn(Optional.of(card));
         when(cardRepository.save(card)).thenReturn(card);
 
         // Act
@@ -122,6 +172,7 @@ class CardServiceImplTest {
 
         // Assert
         verify(cardRepository).deleteById(1L);
+        verify(cardOwnershipCache).invalidateCard(1L);
     }
 
     @Test
@@ -137,6 +188,49 @@ class CardServiceImplTest {
         assertThat(result).hasSize(2);
     }
 
+    @Test
+    void getListCards_fullPage_returnsCursorOfLastRow() {
+        // Arrange
+        ReflectionTestUtils.setField(cardService, "listDefaultPageSize", 2);
+        ReflectionTestUtils.setField(cardService, "listMaxPageSize", 500);
+        List<CardListRow> rows = List.of(listRow(11L), listRow(12L), listRow(13L));
+        when(cardRepository.findListRows(10L, CardStatus.ACTIVE, null, null, null, Limit.of(3))).thenReturn(rows);
+
+        // Act
+        CardPage page = cardService.getListCards(CardStatus.ACTIVE, null, null, null, 10L, null);
+
+        // Assert
+        assertThat(page.cards()).extracting(CardListRow::id).containsExactly(11L, 12L);
+        assertThat(page.nextCursor()).isEqualTo(12L);
+        verify(cardRepository, never()).findAll();
+    }
+
+    @Test
+    void getListCards_lastPage_hasNoCursorAndCapsSize() {
+        // Arrange
+        ReflectionTestUtils.setField(cardService, "listDefaultPageSize", 50);
+        ReflectionTestUtils.setField(cardService, "listMaxPageSize", 100);
+        when(cardRepository.findListRows(eq(0L), any(), any(), any(), any(), eq(Limit.of(101)))).thenReturn(List.of(listRow(1L)));
+
+        // Act
+        CardPage page = cardService.getListCards(null, 5L, null, null, null, 1000);
+
+        // Assert
+        assertThat(page.cards()).hasSize(1);
+        assertThat(page.nextCursor()).isNull();
+    }
+
+    @Test
+    void getListCards_invalidExpiryRange_throws() {
+        // Act + Assert
+        assertThatThrownBy(() -> cardService.getListCards(null, null, LocalDate.of(2030, 1, 1), LocalDate.of(2029, 1, 1), null, null))
+                .isInstanceOf(CreateException.class);
+    }
+
+    private static CardListRow listRow(Long id) {
+        return new CardListRow(id, "enc", "Ivan Ivanov", LocalDate.of(2030, 1, 1), BigDecimal.TEN, CardStatus.ACTIVE, 1L);
+    }
+
     @Test
     void getAllCardsUser_success() {
         // Arrange
@@ -155,7 +249,7 @@ class CardServiceImplTest {
     void getCard_asAdmin_success() {
         // Arrange
         Card card = new Card();
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findWithUserById(1L)).thenReturn(Optional.of(card));
 
         // Act
         Card result = cardService.getCard(1L);
@@ -171,28 +265,22 @@ class CardServiceImplTest {
         Card card = new Card();
         card.setId(1L);
 
-        User user = new User();
-        user.setCards(Set.of(card));
-
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
-        when(userService.getUserByEmail("user@example.com")).thenReturn(user);
+        when(cardRepository.findByIdAndUser_Email(1L, "user@example.com")).thenReturn(Optional.of(card));
 
         // Act
         Card result = cardService.getCard(1L);
 
         // Assert
         assertThat(result).isNotNull();
+        verify(cardRepository, never()).findById(any());
+        verifyNoInteractions(userService);
     }
 
     @Test
     @WithMockUser(roles = "USER", username = "user@example.com")
     void getCard_asUser_NotOwned_fail() {
         // Arrange
-        Card card = new Card();
-        card.setId(1L);
-
-        User user = new User();
-        when(userService.getUserByEmail("user@example.com")).thenReturn(user);
+        when(cardRepository.findByIdAndUser_Email(1L, "user@example.com")).thenReturn(Optional.empty());
 
         // Act + Assert
         assertThatThrownBy(() -> cardService.getCard(1L))
@@ -205,9 +293,10 @@ class CardServiceImplTest {
     void setLimitOnOperationByCard_success() {
         // Arrange
         Card card = new Card();
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
+        when(cardRepository.findWithUserById(1L)).thenReturn(Optional.of(card));
 
         LimitOnOperationByCard limit = new LimitOnOperationByCard();
+        limit.setLimitCard(LimitCard.MONTH);
         limit.setAmount(new BigDecimal("500"));
 
         // Act
@@ -215,8 +304,26 @@ class CardServiceImplTest {
 
         // Assert
         assertThat(limit.getRemainingCrdLimit()).isEqualTo(new BigDecimal("500"));
-        assertThat(limit.getStartPeriud()).isBefore(limit.getEndPeriud());
+        assertThat(limit.getEndPeriud()).isEqualTo(limit.getStartPeriud().plusMonths(1));
         verify(limitOnOperationByCardRepository).save(limit);
+        verify(cardLimitEngine).invalidate(1L);
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN", username = "admin@example.com")
+    void setLimitOnOperationByCard_dayLimit_hasOneDayWindow() {
+        // Arrange
+        when(cardRepository.findWithUserById(1L)).thenReturn(Optional.of(new Card()));
+
+        LimitOnOperationByCard limit = new LimitOnOperationByCard();
+        limit.setLimitCard(LimitCard.DAY);
+        limit.setAmount(new BigDecimal("100"));
+
+        // Act
+        cardService.setLimitOnOperationByCard(1L, limit);
+
+        // Assert
+        assertThat(limit.getEndPeriud()).isEqualTo(limit.getStartPeriud().plusDays(1));
     }
 
     @Test
@@ -233,12 +340,65 @@ class CardServiceImplTest {
         // Arrange
         Card card = new Card();
         String cardNumber = "1234567812345678";
+        when(cardNumberCipher.blindIndex(cardNumber)).thenReturn("hash");
+        when(cardNumberCipher.encrypt(cardNumber)).thenReturn("v1:encrypted");
 
         // Act
         Card result = cardService.encryptedNumberAndMasked(card, cardNumber);
 
         // Assert
-        assertThat(result.getEncryptedCardNumber()).isNotBlank();
-        assertThat(result.getMaskedCardNumber()).startsWith("****");
+        assertThat(result.getEncryptedCardNumber()).isEqualTo("v1:encrypted");
+        assertThat(result.getCardNumberHash()).isEqualTo("hash");
+        assertThat(result.getMaskedCardNumber()).isEqualTo("**** **** **** 5678");
+    }
+
+    @Test
+    void encryptedNumberAndMasked_duplicateNumber_shouldThrow() {
+        // Arrange
+        when(cardNumberCipher.blindIndex("1234567812345678")).thenReturn("hash");
+        when(cardRepository.existsByNumber(eq("hash"), anyCollection())).thenReturn(true);
+
+        // Act & Assert
+        assertThatThrownBy(() -> cardService.encryptedNumberAndMasked(new Card(), "1234567812345678"))
+                .isInstanceOf(CreateException.class);
+        verify(cardNumberCipher, never()).encrypt(anyString());
+    }
+
+    @Test
+    void encryptedNumberAndMasked_shouldAlsoLookForNotYetReencryptedCard() {
+        // Arrange
+        when(cardNumberCipher.blindIndex("1234 5678 1234 5678")).thenReturn("hash");
+
+        // Act
+        cardService.encryptedNumberAndMasked(new Card(), "1234 5678 1234 5678");
+
+        // Assert
+        verify(cardRepository).existsByNumber("hash", List.of(
+                CardEncryptionUtil.encodeLegacy("1234 5678 1234 5678"), CardEncryptionUtil.encodeLegacy("1234567812345678")));
+    }
+
+    @Test
+    void getCardByNumber_shouldLookUpByBlindIndex() {
+        // Arrange
+        Card card = new Card();
+        when(cardNumberCipher.blindIndex("1234567812345678")).thenReturn("hash");
+        when(cardRepository.findByCardNumberHash("hash")).thenReturn(Optional.of(card));
+
+        // Act
+        Card result = cardService.getCardByNumber("1234567812345678");
+
+        // Assert
+        assertThat(result).isSameAs(card);
+    }
+
+    @Test
+    void getCardByNumber_invalidNumber_shouldThrowCreateException() {
+        // Arrange
+        when(cardNumberCipher.blindIndex("abc")).thenThrow(new IllegalArgumentException("Card number must contain only digits"));
+
+        // Act & Assert
+        assertThatThrownBy(() -> cardService.getCardByNumber("abc"))
+                .isInstanceOf(CreateException.class);
+        verifyNoInteractions(cardRepository);
     }
 }
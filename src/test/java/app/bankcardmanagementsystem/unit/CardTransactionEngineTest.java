@@ -0,0 +1,84 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.controller.dto.TransactionDto;
+import app.bankcardmanagementsystem.entity.Transaction;
+import app.bankcardmanagementsystem.exception.CreateException;
+import app.bankcardmanagementsystem.service.engine.CardTransactionEngine;
+import app.bankcardmanagementsystem.service.impl.TransactionServiceImpl;
+import app.bankcardmanagementsystem.service.impl.TransactionServiceImpl.DebitResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CardTransactionEngineTest {
+
+    private TransactionServiceImpl transactionService;
+    private CardTransactionEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        transactionService = mock(TransactionServiceImpl.class);
+        engine = new CardTransactionEngine(transactionService, true, 2, 16, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void execute_shouldReturnTransactionFromGroupCommit() {
+        // Arrange
+        when(transactionService.addTransactions(anyMap())).thenAnswer(inv -> {
+            Map<Long, List<TransactionDto>> debits = inv.getArgument(0);
+            Map<Long, List<DebitResult>> results = new LinkedHashMap<>();
+            debits.forEach((cardId, dtos) -> results.put(cardId, dtos.stream()
+                    .map(dto -> DebitResult.success(Transaction.builder().amount(dto.getAmount()).description(dto.getDescription()).build()))
+                    .toList()));
+            return results;
+        });
+        TransactionDto dto = TransactionDto.builder().amount(new BigDecimal("10")).description("Coffee").build();
+
+        // Act
+        Transaction result = engine.execute(1L, dto);
+
+        // Assert
+        assertThat(result.getAmount()).isEqualTo(new BigDecimal("10"));
+        assertThat(result.getDescription()).isEqualTo("Coffee");
+    }
+
+    @Test
+    void execute_rejectedDebit_shouldRethrowOriginalException() {
+        // Arrange
+        when(transactionService.addTransactions(anyMap())).thenReturn(
+                Map.of(1L, List.of(DebitResult.failed(new CreateException("Недостаточно средств")))));
+        TransactionDto dto = TransactionDto.builder().amount(new BigDecimal("10")).build();
+
+        // Act & Assert
+        assertThatThrownBy(() -> engine.execute(1L, dto))
+                .isInstanceOf(CreateException.class)
+                .hasMessageContaining("Недостаточно средств");
+    }
+
+    @Test
+    void submit_disabledEngine_shouldThrow() {
+        // Arrange
+        CardTransactionEngine disabled = new CardTransactionEngine(transactionService, false, 2, 16, 100);
+
+        // Act & Assert
+        assertThatThrownBy(() -> disabled.submit(1L, TransactionDto.builder().build()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,146 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.controller.dto.TransactionDto;
+import app.bankcardmanagementsystem.entity.IdempotencyKey;
+import app.bankcardmanagementsystem.entity.Transaction;
+import app.bankcardmanagementsystem.exception.CreateException;
+import app.bankcardmanagementsystem.exception.UpdateException;
+import app.bankcardmanagementsystem.mapper.TransactionMapper;
+import app.bankcardmanagementsystem.repository.IdempotencyKeyRepository;
+import app.bankcardmanagementsystem.service.impl.IdempotencyServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(SpringExtension.class)
+class IdempotencyServiceImplTest {
+
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+    private IdempotencyServiceImpl idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyKeyRepository = mock(IdempotencyKeyRepository.class);
+        TransactionMapper transactionMapper = mock(TransactionMapper.class);
+        when(transactionMapper.toDto(any())).thenAnswer(inv -> {
+            Transaction tx = inv.getArgument(0);
+            return TransactionDto.builder().description(tx.getDescription()).amount(tx.getAmount()).build();
+        });
+        idempotencyService = new IdempotencyServiceImpl(idempotencyKeyRepository, transactionMapper, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    @WithMockUser(username = "user@example.com")
+    void execute_retry_shouldReturnCachedResponseWithoutRunningOperationAgain() {
+        // Arrange
+        AtomicInteger calls = new AtomicInteger();
+        Function<Consumer<Transaction>, Transaction> operation = recorder -> {
+            calls.incrementAndGet();
+            Transaction transaction = Transaction.builder().id(7L).description("Coffee").amount(BigDecimal.TEN).build();
+            recorder.accept(transaction);
+            return transaction;
+        };
+
+        // Act
+        TransactionDto first = idempotencyService.execute("key-1", "transfer", operation);
+        TransactionDto retry = idempotencyService.execute("key-1", "transfer", operation);
+
+        // Assert
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(retry.getDescription()).isEqualTo(first.getDescription());
+        verify(idempotencyKeyRepository, times(1)).insertCompleted(eq("user@example.com"), eq("key-1"), eq("transfer"),
+                eq(7L), eq("Coffee"), eq(BigDecimal.TEN), any());
+        verify(idempotencyKeyRepository, times(1)).findByUsernameAndIdempotencyKey(any(), any());
+    }
+
+    @Test
+    @WithMockUser(username = "user@example.com")
+    void execute_completedInDatabase_shouldReplayStoredResponse() {
+        // Arrange
+        when(idempotencyKeyRepository.findByUsernameAndIdempotencyKey("user@example.com", "key-1")).thenReturn(Optional.of(
+                IdempotencyKey.builder().scope("transaction:1").transactionId(7L).description("Coffee").amount(BigDecimal.TEN).build()));
+
+        // Act
+        TransactionDto result = idempotencyService.execute("key-1", "transaction:1", recorder -> {
+            throw new AssertionError("operation must not run");
+        });
+
+        // Assert
+        assertThat(result.getAmount()).isEqualTo(BigDecimal.TEN);
+    }
+
+    @Test
+    @WithMockUser(username = "user@example.com")
+    void execute_concurrentRequestCommittedFirst_shouldReplayItsResponse() {
+        // Arrange
+        when(idempotencyKeyRepository.findByUsernameAndIdempotencyKey("user@example.com", "key-1"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(IdempotencyKey.builder().scope("transfer").transactionId(5L)
+                        .description("First").amount(BigDecimal.ONE).build()));
+        when(idempotencyKeyRepository.insertCompleted(any(), any(), any(), any(), any(), any(), any()))
+                .thenThrow(new DataIntegrityViolationException("uq_idempotency_key_username_key"));
+
+        // Act
+        TransactionDto result = idempotencyService.execute("key-1", "transfer", recorder -> {
+            Transaction transaction = Transaction.builder().id(7L).description("Second").amount(BigDecimal.TEN).build();
+            recorder.accept(transaction);
+            return transaction;
+        });
+
+        // Assert
+        assertThat(result.getDescription()).isEqualTo("First");
+        assertThat(result.getAmount()).isEqualTo(BigDecimal.ONE);
+    }
+
+    @Test
+    @WithMockUser(username = "user@example.com")
+    void execute_otherScope_shouldThrowConflict() {
+        // Arrange
+        when(idempotencyKeyRepository.findByUsernameAndIdempotencyKey("user@example.com", "key-1")).thenReturn(Optional.of(
+                IdempotencyKey.builder().scope("transfer").transactionId(7L).build()));
+
+        // Act & Assert
+        assertThatThrownBy(() -> idempotencyService.execute("key-1", "transaction:1", recorder -> new Transaction()))
+                .isInstanceOf(UpdateException.class);
+    }
+
+    @Test
+    @WithMockUser(username = "user@example.com")
+    void execute_failedOperation_shouldNotRecordKey() {
+        // Act & Assert
+        assertThatThrownBy(() -> idempotencyService.execute("key-1", "transfer", recorder -> {
+            throw new CreateException("Недостаточно средств");
+        })).isInstanceOf(CreateException.class);
+        verify(idempotencyKeyRepository, never()).insertCompleted(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void execute_withoutKey_shouldRunOperationWithoutRecording() {
+        // Act
+        TransactionDto result = idempotencyService.execute(null, "transfer", recorder -> {
+            Transaction transaction = Transaction.builder().description("Coffee").amount(BigDecimal.TEN).build();
+            recorder.accept(transaction);
+            return transaction;
+        });
+
+        // Assert
+        assertThat(result.getDescription()).isEqualTo("Coffee");
+        verifyNoInteractions(idempotencyKeyRepository);
+    }
+}
@@ -1,16 +1,24 @@
 package app.bankcardmanagementsystem.unit;
 
+import app.bankcardmanagementsystem.entity.Role;
 import app.bankcardmanagementsystem.entity.TokenJWT;
 import app.bankcardmanagementsystem.entity.User;
 import app.bankcardmanagementsystem.repository.TokenRepo;
+import app.bankcardmanagementsystem.service.engine.UserDetailsCache.AuthenticatedUser;
 import app.bankcardmanagementsystem.service.impl.JWTServiceImpl;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import javax.crypto.SecretKey;
+import java.time.LocalDateTime;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -68,60 +76,119 @@ class JWTServiceImplTest {
     }
 
     @Test
-    void saveToken_shouldUpdateExistingToken() {
+    void saveToken_shouldStoreDigestAndExpiryInsteadOfToken() {
         // Arrange
         User user = new User();
         user.setId(1L);
         user.setEmail("existing@example.com");
+        String refreshToken = jwtService.generateRefreshToken(new HashMap<>(), user);
+        when(tokenRepo.save(any(TokenJWT.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
-        TokenJWT existingToken = new TokenJWT();
-        existingToken.setRefreshToken("old_refresh");
-        existingToken.setUser(user);
+        // Act
+        TokenJWT result = jwtService.saveToken(user, refreshToken);
 
-        when(tokenRepo.findById(user.getId())).thenReturn(Optional.of(existingToken));
-        when(tokenRepo.save(any(TokenJWT.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        // Assert
+        assertThat(result.getTokenHash()).hasSize(64).isNotEqualTo(refreshToken);
+        assertThat(result.getUser()).isEqualTo(user);
+        assertThat(result.getExpiresAt()).isAfter(LocalDateTime.now().plusDays(6));
+        verify(tokenRepo, never()).findById(any());
+    }
+
+    @Test
+    void generateRefreshToken_sameUserSameSecond_shouldProduceDistinctTokens() {
+        // Arrange
+        User user = new User();
+        user.setEmail("sessions@example.com");
+
+        // Act
+        String first = jwtService.generateRefreshToken(new HashMap<>(), user);
+        String second = jwtService.generateRefreshToken(new HashMap<>(), user);
+
+        // Assert
+        assertThat(first).isNotEqualTo(second);
+    }
+
+    @Test
+    void getRefreshToken_shouldLookUpByDigest() {
+        // Arrange
+        TokenJWT tokenJWT = TokenJWT.builder().expiresAt(LocalDateTime.now().plusDays(1)).build();
+        when(tokenRepo.findByTokenHash(anyString())).thenReturn(Optional.of(tokenJWT));
 
         // Act
-        TokenJWT result = jwtService.saveToken(user, "new_refresh_token");
+        TokenJWT result = jwtService.getRefreshToken("some_refresh_token");
+
+        // Assert
+        assertThat(result).isSameAs(tokenJWT);
+        verify(tokenRepo).findByTokenHash(argThat(hash -> hash.length() == 64 && !hash.equals("some_refresh_token")));
+    }
+
+    @Test
+    void consumeRefreshToken_shouldSucceedOnlyOnce() {
+        // Arrange
+        when(tokenRepo.deleteByTokenHash(anyString())).thenReturn(1, 0);
+
+        // Act
+        boolean first = jwtService.consumeRefreshToken("refresh_to_rotate");
+        boolean second = jwtService.consumeRefreshToken("refresh_to_rotate");
 
         // Assert
-        assertThat(result.getRefreshToken()).isEqualTo("new_refresh_token");
-        verify(tokenRepo).save(existingToken);
+        assertThat(first).isTrue();
+        assertThat(second).isFalse();
     }
 
     @Test
-    void saveToken_shouldCreateNewTokenIfNotExists() {
+    void consumeRefreshToken_replayOfConsumedToken_shouldBeRejectedWithoutDatabase() {
+        // Arrange
+        when(tokenRepo.deleteByTokenHash(anyString())).thenReturn(1);
+        jwtService.consumeRefreshToken("refresh_to_rotate");
+
+        // Act
+        boolean replay = jwtService.consumeRefreshToken("refresh_to_rotate");
+        TokenJWT session = jwtService.getRefreshToken("refresh_to_rotate");
+
+        // Assert
+        assertThat(replay).isFalse();
+        assertThat(session).isNull();
+        verify(tokenRepo, times(1)).deleteByTokenHash(anyString());
+        verify(tokenRepo, never()).findByTokenHash(any());
+    }
+
+    @Test
+    void consumeRefreshToken_newToken_shouldAlwaysBeDecidedByDatabase() {
         // Arrange
         User user = new User();
         user.setId(2L);
-        user.setEmail("new@example.com");
-
-        when(tokenRepo.findById(user.getId())).thenReturn(Optional.empty());
+        user.setEmail("rotate@example.com");
+        String refreshToken = jwtService.generateRefreshToken(new HashMap<>(), user);
         when(tokenRepo.save(any(TokenJWT.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(tokenRepo.deleteByTokenHash(anyString())).thenReturn(1);
+        jwtService.saveToken(user, refreshToken);
 
         // Act
-        TokenJWT result = jwtService.saveToken(user, "new_refresh_token");
+        boolean consumed = jwtService.consumeRefreshToken(refreshToken);
 
         // Assert
-        assertThat(result.getRefreshToken()).isEqualTo("new_refresh_token");
-        assertThat(result.getUser()).isEqualTo(user);
-        verify(tokenRepo).save(any(TokenJWT.class));
+        assertThat(consumed).isTrue();
+        verify(tokenRepo).deleteByTokenHash(anyString());
     }
 
     @Test
-    void getRefreshToken_shouldReturnTokenJWT() {
+    void removeAllRefreshTokens_shouldDeleteEverySessionAndRejectItsTokens() {
         // Arrange
-        TokenJWT tokenJWT = new TokenJWT();
-        tokenJWT.setRefreshToken("some_refresh_token");
-
-        when(tokenRepo.findByRefreshToken("some_refresh_token")).thenReturn(Optional.of(tokenJWT));
+        User user = new User();
+        user.setEmail("reset@example.com");
+        String oldSession = jwtService.generateRefreshToken(new HashMap<>(), user);
+        when(tokenRepo.save(any(TokenJWT.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        TokenJWT saved = jwtService.saveToken(user, oldSession);
+        when(tokenRepo.deleteByUserEmail("reset@example.com")).thenReturn(List.of(saved.getTokenHash()));
 
         // Act
-        TokenJWT result = jwtService.getRefreshToken("some_refresh_token");
+        jwtService.removeAllRefreshTokens("reset@example.com");
+        boolean consumed = jwtService.consumeRefreshToken(oldSession);
 
         // Assert
-        assertThat(result).isNotNull();
-        assertThat(result.getRefreshToken()).isEqualTo("some_refresh_token");
+        assertThat(consumed).isFalse();
+        verify(tokenRepo, never()).deleteByTokenHash(anyString());
     }
 
     @Test
@@ -133,7 +200,7 @@ class JWTServiceImplTest {
         jwtService.removeRefreshToken(refreshToken);
 
         // Assert
-        verify(tokenRepo).deleteByRefreshToken(refreshToken);
+        verify(tokenRepo).deleteByTokenHash(argThat(hash -> hash.length() == 64));
     }
 
     @Test
@@ -164,4 +231,71 @@ class JWTServiceImplTest {
         assertThat(isValid).isTrue();
     }
 
+    @Test
+    void isTokenValidAccessToken_shouldRejectTokenOfAnotherUser() {
+        // Arrange
+        User owner = new User();
+        owner.setEmail("owner@test.com");
+        User other = new User();
+        other.setEmail("other@test.com");
+        String token = jwtService.generateToken(owner);
+        jwtService.getUserNameFromAccessToken(token);
+
+        // Act
+        boolean isValid = jwtService.isTokenValidAccessToken(token, other);
+
+        // Assert
+        assertThat(isValid).isFalse();
+    }
+
+    @Test
+    void getUserNameFromAccessToken_shouldReturnNullForTamperedOrExpiredToken() {
+        // Arrange
+        User user = new User();
+        user.setEmail("access@test.com");
+        String token = jwtService.generateToken(user);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+        String expired = Jwts.builder()
+                .setSubject(user.getEmail())
+                .setExpiration(new Date(System.currentTimeMillis() - 1000))
+                .signWith(accessSecret, SignatureAlgorithm.HS256)
+                .compact();
+
+        // Act & Assert
+        assertThat(jwtService.getUserNameFromAccessToken(tampered)).isNull();
+        assertThat(jwtService.getUserNameFromAccessToken(expired)).isNull();
+        assertThat(jwtService.isTokenValidAccessToken(expired, user)).isFalse();
+    }
+
+    @Test
+    void getAuthenticatedUser_statelessMode_shouldBuildPrincipalFromClaims() {
+        // Arrange
+        jwtService.setStatelessEnabled(true);
+        User user = User.builder()
+                .id(7L)
+                .email("stateless@test.com")
+                .roles(Set.of(Role.ROLE_ADMIN))
+                .build();
+        String token = jwtService.generateToken(user);
+
+        // Act
+        AuthenticatedUser result = jwtService.getAuthenticatedUser(jwtService.getAccessTokenClaims(token));
+
+        // Assert
+        assertThat(result.user().getId()).isEqualTo(7L);
+        assertThat(result.user().getUsername()).isEqualTo("stateless@test.com");
+        assertThat(result.authorities()).extracting("authority").containsExactly("ROLE_ADMIN");
+    }
+
+    @Test
+    void getAuthenticatedUser_statefulMode_shouldReturnNull() {
+        // Arrange
+        User user = new User();
+        user.setEmail("stateful@test.com");
+        String token = jwtService.generateToken(user);
+
+        // Act & Assert
+        assertThat(jwtService.getAuthenticatedUser(jwtService.getAccessTokenClaims(token))).isNull();
+    }
+
 }
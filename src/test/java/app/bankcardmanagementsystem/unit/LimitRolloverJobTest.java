@@ -0,0 +1,64 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.repository.LimitOnOperationByCardRepository;
+import app.bankcardmanagementsystem.scheduler.LimitRolloverJob;
+import app.bankcardmanagementsystem.service.engine.CardLimitEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class LimitRolloverJobTest {
+
+    private LimitOnOperationByCardRepository limitRepository;
+    private CardLimitEngine cardLimitEngine;
+    private SimpleMeterRegistry meterRegistry;
+    private LimitRolloverJob job;
+
+    @BeforeEach
+    void setUp() {
+        limitRepository = mock(LimitOnOperationByCardRepository.class);
+        cardLimitEngine = mock(CardLimitEngine.class);
+        meterRegistry = new SimpleMeterRegistry();
+        job = new LimitRolloverJob(limitRepository, cardLimitEngine, meterRegistry);
+        ReflectionTestUtils.setField(job, "chunkSize", 2);
+    }
+
+    @Test
+    void rollover_shouldProcessChunksUntilLastPartialOne() {
+        // Arrange
+        LocalDateTime now = LocalDateTime.of(2024, 5, 1, 0, 0);
+        when(limitRepository.rolloverExpired(eq("DAY"), eq("P1D"), eq(now), eq(2))).thenReturn(2, 2, 1);
+        when(limitRepository.rolloverExpired(eq("MONTH"), eq("P1M"), eq(now), eq(2))).thenReturn(0);
+
+        // Act
+        long total = job.rollover(now);
+
+        // Assert
+        assertThat(total).isEqualTo(5);
+        verify(limitRepository, times(3)).rolloverExpired(eq("DAY"), any(), any(), anyInt());
+        verify(cardLimitEngine).invalidateAll();
+        assertThat(meterRegistry.counter("limit.rollover.rows").count()).isEqualTo(5.0);
+    }
+
+    @Test
+    void rollover_nothingExpired_shouldKeepCache() {
+        // Arrange
+        when(limitRepository.rolloverExpired(any(), any(), any(), anyInt())).thenReturn(0);
+
+        // Act
+        job.run();
+
+        // Assert
+        verify(cardLimitEngine, never()).invalidateAll();
+        assertThat(meterRegistry.timer("limit.rollover.duration").count()).isEqualTo(1);
+    }
+}
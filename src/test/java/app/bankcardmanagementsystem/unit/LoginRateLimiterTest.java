@@ -0,0 +1,81 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.exception.TooManyRequestsException;
+import app.bankcardmanagementsystem.service.engine.LoginRateLimiter;
+import app.bankcardmanagementsystem.service.engine.LoginRateLimiter.Limit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LoginRateLimiterTest {
+
+    private final AtomicLong nanos = new AtomicLong(1_000_000_000L);
+    private LoginRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new LoginRateLimiter(true,
+                new Limit(3, Duration.ofSeconds(30)),
+                new Limit(5, Duration.ofSeconds(50)),
+                1000, nanos::get);
+    }
+
+    @Test
+    void acquire_emailBucketExhausted_shouldThrowWithRetryAfter() {
+        // Arrange
+        for (int i = 0; i < 3; i++)
+            limiter.acquire("user@mail.ru", "10.0.0." + i);
+
+        // Act & Assert: одна попытка возвращается за 30s / 3 = 10s
+        assertThatThrownBy(() -> limiter.acquire("USER@mail.ru ", "10.0.0.9"))
+                .isInstanceOf(TooManyRequestsException.class)
+                .satisfies(e -> assertThat(((TooManyRequestsException) e).getRetryAfterSeconds()).isEqualTo(10));
+    }
+
+    @Test
+    void acquire_afterRefillInterval_shouldAllowOneMoreAttempt() {
+        // Arrange
+        for (int i = 0; i < 3; i++)
+            limiter.acquire("user@mail.ru", "10.0.0." + i);
+
+        // Act
+        nanos.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        // Assert
+        assertThatCode(() -> limiter.acquire("user@mail.ru", "10.0.0.10")).doesNotThrowAnyException();
+        assertThatThrownBy(() -> limiter.acquire("user@mail.ru", "10.0.0.11"))
+                .isInstanceOf(TooManyRequestsException.class);
+    }
+
+    @Test
+    void acquire_ipBucketExhausted_shouldThrowForAnyEmail() {
+        // Arrange
+        for (int i = 0; i < 5; i++)
+            limiter.acquire("user" + i + "@mail.ru", "10.0.0.1");
+
+        // Act & Assert
+        assertThatThrownBy(() -> limiter.acquire("other@mail.ru", "10.0.0.1"))
+                .isInstanceOf(TooManyRequestsException.class)
+                .hasMessageContaining("address");
+        assertThatCode(() -> limiter.acquire("other@mail.ru", "10.0.0.2")).doesNotThrowAnyException();
+    }
+
+    @Test
+    void acquire_disabled_shouldNeverThrow() {
+        // Arrange
+        limiter = new LoginRateLimiter(false, new Limit(1, Duration.ofMinutes(1)), new Limit(1, Duration.ofMinutes(1)),
+                1000, nanos::get);
+
+        // Act & Assert
+        assertThatCode(() -> {
+            for (int i = 0; i < 10; i++)
+                limiter.acquire("user@mail.ru", "10.0.0.1");
+        }).doesNotThrowAnyException();
+    }
+}
@@ -0,0 +1,30 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.repository.TokenRepo;
+import app.bankcardmanagementsystem.scheduler.RefreshTokenCleanupJob;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RefreshTokenCleanupJobTest {
+
+    @Test
+    void run_shouldDeleteInBatchesUntilPartialBatch() {
+        // Arrange
+        TokenRepo tokenRepo = mock(TokenRepo.class);
+        when(tokenRepo.deleteExpired(any(LocalDateTime.class), eq(100))).thenReturn(100, 100, 42);
+        RefreshTokenCleanupJob job = new RefreshTokenCleanupJob(tokenRepo);
+        ReflectionTestUtils.setField(job, "batchSize", 100);
+
+        // Act
+        job.run();
+
+        // Assert
+        verify(tokenRepo, times(3)).deleteExpired(any(LocalDateTime.class), eq(100));
+    }
+}
@@ -0,0 +1,88 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.entity.RevokedToken;
+import app.bankcardmanagementsystem.repository.RevokedTokenRepository;
+import app.bankcardmanagementsystem.service.engine.TokenDenylist;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class TokenDenylistTest {
+
+    private RevokedTokenRepository revokedTokenRepository;
+    private TokenDenylist tokenDenylist;
+
+    @BeforeEach
+    void setUp() {
+        revokedTokenRepository = mock(RevokedTokenRepository.class);
+        tokenDenylist = new TokenDenylist(revokedTokenRepository, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void revoke_shouldRejectTokensIssuedBeforeRevocationOnly() {
+        // Arrange
+        Date issuedBefore = new Date(System.currentTimeMillis() - 60_000);
+
+        // Act
+        tokenDenylist.revoke("user@example.com");
+        Date issuedAfter = new Date();
+
+        // Assert
+        verify(revokedTokenRepository).revoke(eq("user@example.com"), any(LocalDateTime.class));
+        assertThat(tokenDenylist.isRevoked("user@example.com", issuedBefore)).isTrue();
+        assertThat(tokenDenylist.isRevoked("user@example.com", issuedAfter)).isFalse();
+        assertThat(tokenDenylist.isRevoked("other@example.com", issuedBefore)).isFalse();
+    }
+
+    @Test
+    void load_shouldRestorePersistedRevocations() {
+        // Arrange
+        LocalDateTime revokedBefore = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        when(revokedTokenRepository.findAll()).thenReturn(List.of(new RevokedToken("user@example.com", revokedBefore)));
+        Date issuedAt = Date.from(revokedBefore.minusHours(1).atZone(ZoneId.systemDefault()).toInstant());
+
+        // Act
+        tokenDenylist.load();
+
+        // Assert
+        assertThat(tokenDenylist.isRevoked("user@example.com", issuedAt)).isTrue();
+    }
+
+    @Test
+    void refresh_shouldReadOnlyRecentRevocationsAfterInitialLoad() {
+        // Arrange
+        when(revokedTokenRepository.findAll()).thenReturn(List.of());
+        LocalDateTime revokedBefore = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        when(revokedTokenRepository.findByRevokedBeforeAfter(any())).thenReturn(List.of(new RevokedToken("remote@example.com", revokedBefore)));
+        tokenDenylist.load();
+
+        // Act
+        tokenDenylist.refresh();
+
+        // Assert
+        verify(revokedTokenRepository, times(1)).findAll();
+        verify(revokedTokenRepository).findByRevokedBeforeAfter(any(LocalDateTime.class));
+        assertThat(tokenDenylist.isRevoked("remote@example.com", new Date(0))).isTrue();
+    }
+
+    @Test
+    void revoke_emptySubject_shouldBeIgnored() {
+        // Act
+        tokenDenylist.revoke(null);
+        tokenDenylist.revoke("");
+
+        // Assert
+        verifyNoInteractions(revokedTokenRepository);
+    }
+}
@@ -0,0 +1,143 @@
+package app.bankcardmanagementsystem.unit;
+
+import app.bankcardmanagementsystem.scheduler.TransactionPartitionMaintenanceJob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class TransactionPartitionMaintenanceJobTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private TransactionPartitionMaintenanceJob job;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        transactionTemplate = mock(TransactionTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        job = new TransactionPartitionMaintenanceJob(jdbcTemplate, transactionTemplate, meterRegistry);
+        ReflectionTestUtils.setField(job, "monthsAhead", 2);
+        ReflectionTestUtils.setField(job, "retentionMonths", 12);
+        ReflectionTestUtils.setField(job, "archiveSchema", "transaction_archive");
+        doAnswer(inv -> {
+            inv.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void maintain_createsFuturePartitions() {
+        // Arrange
+        when(jdbcTemplate.queryForList(any(String.class), eq(String.class))).thenReturn(List.of());
+
+        // Act
+        job.maintain(YearMonth.of(2024, 11));
+
+        // Assert
+        verify(jdbcTemplate).execute(contains("\"transaction_p202411\" PARTITION OF \"transaction\" FOR VALUES FROM ('2024-11-01') TO ('2024-12-01')"));
+        verify(jdbcTemplate).execute(contains("\"transaction_p202412\""));
+        verify(jdbcTemplate).execute(contains("\"transaction_p202501\" PARTITION OF \"transaction\" FOR VALUES FROM ('2025-01-01') TO ('2025-02-01')"));
+    }
+
+    @Test
+    void maintain_archivesOnlyPartitionsOlderThanRetention() {
+        // Arrange
+        when(jdbcTemplate.queryForList(any(String.class), eq(String.class)))
+                .thenReturn(List.of("transaction_p202310", "transaction_p202311", "transaction_p202411", "transaction_default"));
+
+        // Act
+        job.maintain(YearMonth.of(2024, 11));
+
+        // Assert
+        verify(jdbcTemplate).execute("ALTER TABLE \"transaction\" DETACH PARTITION \"transaction_p202310\"");
+        verify(jdbcTemplate).execute("ALTER TABLE \"transaction_p202310\" SET SCHEMA \"transaction_archive\"");
+        verify(jdbcTemplate, never()).execute(contains("DETACH PARTITION \"transaction_p202311\""));
+        verify(jdbcTemplate, never()).execute(contains("DETACH PARTITION \"transaction_default\""));
+    }
+
+    @Test
+    void maintain_dropsForeignKeysOfArchivedPartition() {
+        // Arrange
+        when(jdbcTemplate.queryForList(any(String.class), eq(String.class)))
+                .thenReturn(List.of("transaction_p202310"));
+        when(jdbcTemplate.queryForList(contains("pg_constraint"), eq(String.class), eq("\"transaction_p202310\"")))
+                .thenReturn(List.of("fk_transaction_card"));
+
+        // Act
+        job.maintain(YearMonth.of(2024, 11));
+
+        // Assert
+        var inOrder = inOrder(jdbcTemplate);
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE \"transaction\" DETACH PARTITION \"transaction_p202310\"");
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE \"transaction_p202310\" DROP CONSTRAINT \"fk_transaction_card\"");
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE \"transaction_p202310\" SET SCHEMA \"transaction_archive\"");
+    }
+
+    @Test
+    void maintain_skipsExistingPartitions() {
+        // Arrange
+        when(jdbcTemplate.queryForObject(contains("to_regclass"), eq(Boolean.class), any())).thenReturn(true);
+        when(jdbcTemplate.queryForList(any(String.class), eq(String.class))).thenReturn(List.of());
+
+        // Act
+        job.maintain(YearMonth.of(2024, 11));
+
+        // Assert
+        verify(jdbcTemplate, never()).execute(contains("PARTITION OF"));
+    }
+
+    @Test
+    void maintain_movesDefaultPartitionRowsIntoNewPartition() {
+        // Arrange
+        LocalDate from = LocalDate.of(2025, 1, 1);
+        LocalDate to = LocalDate.of(2025, 2, 1);
+        when(jdbcTemplate.queryForObject(contains("FROM \"transaction_default\""), eq(Boolean.class), eq(from), eq(to)))
+                .thenReturn(true);
+        when(jdbcTemplate.update(contains("INSERT INTO \"transaction\""), eq(from), eq(to))).thenReturn(3);
+        when(jdbcTemplate.queryForList(any(String.class), eq(String.class))).thenReturn(List.of());
+
+        // Act
+        job.maintain(YearMonth.of(2024, 11));
+
+        // Assert
+        var inOrder = inOrder(jdbcTemplate);
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE \"transaction\" DETACH PARTITION \"transaction_default\"");
+        inOrder.verify(jdbcTemplate).execute(contains("\"transaction_p202501\" PARTITION OF \"transaction\""));
+        inOrder.verify(jdbcTemplate).update(contains("INSERT INTO \"transaction\" SELECT * FROM \"transaction_default\""), eq(from), eq(to));
+        inOrder.verify(jdbcTemplate).update(contains("DELETE FROM \"transaction_default\""), eq(from), eq(to));
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE \"transaction\" ATTACH PARTITION \"transaction_default\" DEFAULT");
+        verify(jdbcTemplate, times(1)).execute(contains("DETACH PARTITION \"transaction_default\""));
+    }
+
+    @Test
+    void maintain_countsFailedPartitionCreation() {
+        // Arrange
+        doThrow(new CannotAcquireLockException("lock timeout"))
+                .when(jdbcTemplate).execute(contains("\"transaction_p202412\" PARTITION OF"));
+        when(jdbcTemplate.queryForList(any(String.class), eq(String.class))).thenReturn(List.of());
+
+        // Act
+        job.maintain(YearMonth.of(2024, 11));
+
+        // Assert
+        verify(jdbcTemplate).execute(contains("\"transaction_p202501\" PARTITION OF"));
+        assertThat(meterRegistry.counter("transaction.partition.failures").count()).isEqualTo(1.0);
+    }
+}
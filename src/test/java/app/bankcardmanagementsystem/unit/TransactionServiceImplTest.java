@@ -1,27 +1,55 @@
 package app.bankcardmanagementsystem.unit;
 
+import app.bankcardmanagementsystem.controller.dto.CardTransactionDto;
 import app.bankcardmanagementsystem.controller.dto.TransactionDto;
 import app.bankcardmanagementsystem.controller.dto.TransferRequestDto;
 import app.bankcardmanagementsystem.entity.*;
 import app.bankcardmanagementsystem.exception.CreateException;
+import app.bankcardmanagementsystem.exception.NotFoundException;
+import app.bankcardmanagementsystem.repository.CardDailyAggregateRepository;
 import app.bankcardmanagementsystem.repository.CardRepository;
-import app.bankcardmanagementsystem.repository.LimitOnOperationByCardRepository;
 import app.bankcardmanagementsystem.repository.TransactionRepository;
+import app.bankcardmanagementsystem.service.engine.CardLimitEngine;
+import app.bankcardmanagementsystem.service.engine.CardLimitEngine.LimitBudget;
+import app.bankcardmanagementsystem.service.engine.CardOwnershipCache;
 import app.bankcardmanagementsystem.service.impl.TransactionServiceImpl;
+import app.bankcardmanagementsystem.repository.projection.TransactionExportRow;
+import app.bankcardmanagementsystem.utils.TransactionCursor;
+import app.bankcardmanagementsystem.utils.TransactionExportFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(SpringExtension.class)
@@ -34,11 +62,34 @@ class TransactionServiceImplTest {
     private TransactionRepository transactionRepository;
 
     @Mock
-    private LimitOnOperationByCardRepository limitOnOperationByCardRepository;
+    private CardLimitEngine cardLimitEngine;
+
+    @Mock
+    private CardDailyAggregateRepository cardDailyAggregateRepository;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
 
     @Mock
     private CardRepository cardRepository;
 
+    @Mock
+    private CardOwnershipCache cardOwnershipCache;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(transactionService, "transferMaxAttempts", 3);
+        ReflectionTestUtils.setField(transactionService, "batchMaxSize", 10);
+        ReflectionTestUtils.setField(transactionService, "historyDefaultPageSize", 50);
+        ReflectionTestUtils.setField(transactionService, "historyMaxPageSize", 500);
+        ReflectionTestUtils.setField(transactionService, "summaryMaxDays", 366);
+        when(transactionTemplate.execute(any())).thenAnswer(inv -> ((TransactionCallback<?>) inv.getArgument(0)).doInTransaction(null));
+    }
+
     @Test
     void addTransaction_success() {
         // Arrange
@@ -56,8 +107,9 @@ class TransactionServiceImplTest {
                 .description("Test")
                 .build();
 
-        when(cardRepository.findById(cardId)).thenReturn(Optional.of(card));
-        when(limitOnOperationByCardRepository.findByCard_Id(cardId)).thenReturn(List.of());
+        when(cardRepository.debit(cardId, transactionAmount)).thenReturn(1);
+        when(cardRepository.getReferenceById(cardId)).thenReturn(card);
+        when(cardLimitEngine.getBudgets(cardId)).thenReturn(List.of());
         when(transactionRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
 
         // Act
@@ -66,10 +118,34 @@ class TransactionServiceImplTest {
         // Assert
         assertThat(result.getAmount()).isEqualTo(transactionAmount);
         assertThat(result.getDescription()).isEqualTo("Test");
-        verify(cardRepository, times(1)).save(card);
+        verify(cardRepository, times(1)).debit(cardId, transactionAmount);
+        verify(cardLimitEngine, times(1)).debit(cardId, List.of(), transactionAmount);
+        verify(cardLimitEngine, never()).reload(any());
+        verify(cardDailyAggregateRepository).add(eq(cardId), any(), eq(transactionAmount), eq(BigDecimal.ZERO), eq(1L));
+        verify(cardRepository, never()).save(any());
         verify(transactionRepository, times(1)).save(any());
     }
 
+    @Test
+    void addTransaction_descriptionLooksLikeIncomingTransfer_isStillDebit() {
+        // Arrange
+        Long cardId = 1L;
+        TransactionDto dto = TransactionDto.builder()
+                .amount(new BigDecimal("100"))
+                .description("Incoming transfer from card **** 1234")
+                .build();
+        when(cardRepository.debit(cardId, dto.getAmount())).thenReturn(1);
+        when(cardRepository.getReferenceById(cardId)).thenReturn(Card.builder().id(cardId).build());
+        when(cardLimitEngine.getBudgets(cardId)).thenReturn(List.of());
+        when(transactionRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
+
+        // Act
+        Transaction result = transactionService.addTransaction(cardId, dto);
+
+        // Assert
+        assertThat(result.getDirection()).isEqualTo(TransactionDirection.DEBIT);
+    }
+
     @Test
     void addTransaction_insufficientFunds_throwsCreateException() {
         // Arrange
@@ -80,6 +156,7 @@ class TransactionServiceImplTest {
         Card card = Card.builder()
                 .id(cardId)
                 .balance(cardBalance)
+                .status(CardStatus.ACTIVE)
                 .build();
 
         TransactionDto dto = TransactionDto.builder()
@@ -87,6 +164,7 @@ class TransactionServiceImplTest {
                 .amount(transactionAmount)
                 .build();
 
+        when(cardRepository.debit(cardId, transactionAmount)).thenReturn(0);
         when(cardRepository.findById(cardId)).thenReturn(Optional.of(card));
 
         // Act & Assert
@@ -95,6 +173,24 @@ class TransactionServiceImplTest {
                 .hasMessageContaining("Недостаточно средств");
     }
 
+    @Test
+    void addTransaction_nonPositiveAmount_throwsCreateException() {
+        // Arrange
+        Long cardId = 1L;
+        TransactionDto zero = TransactionDto.builder().description("zero").amount(BigDecimal.ZERO).build();
+        TransactionDto negative = TransactionDto.builder().description("negative").amount(new BigDecimal("-10")).build();
+
+        // Act & Assert
+        assertThatThrownBy(() -> transactionService.addTransaction(cardId, zero))
+                .isInstanceOf(CreateException.class)
+                .hasMessageContaining("больше нуля");
+        assertThatThrownBy(() -> transactionService.addTransaction(cardId, negative))
+                .isInstanceOf(CreateException.class)
+                .hasMessageContaining("больше нуля");
+        verify(cardRepository, never()).debit(any(), any());
+        verify(transactionRepository, never()).save(any());
+    }
+
     @Test
     void addTransaction_exceedsDayLimit_throwsCreateException() {
         // Arrange
@@ -112,61 +208,389 @@ class TransactionServiceImplTest {
                 .description("Test")
                 .build();
 
-        LimitOnOperationByCard limit = LimitOnOperationByCard.builder()
-                .remainingCrdLimit(new BigDecimal("200"))
-                .limitCard(LimitCard.DAY)
+        when(cardLimitEngine.findExceeded(any(), eq(transactionAmount))).thenReturn(LimitCard.DAY);
+
+        // Act & Assert
+        assertThatThrownBy(() -> transactionService.addTransaction(cardId, dto))
+                .isInstanceOf(CreateException.class)
+                .hasMessageContaining("дневного бюджета");
+        verify(cardLimitEngine, times(1)).reload(cardId);
+        verify(cardRepository, never()).debit(any(), any());
+    }
+
+    @Test
+    void addTransaction_blockedCard_throwsCreateException() {
+        // Arrange
+        Long cardId = 1L;
+        BigDecimal transactionAmount = new BigDecimal("100");
+
+        Card card = Card.builder()
+                .id(cardId)
+                .balance(new BigDecimal("1000"))
+                .status(CardStatus.BLOCKED)
+                .build();
+
+        TransactionDto dto = TransactionDto.builder()
+                .amount(transactionAmount)
+                .description("Test")
                 .build();
 
+        when(cardRepository.debit(cardId, transactionAmount)).thenReturn(0);
         when(cardRepository.findById(cardId)).thenReturn(Optional.of(card));
-        when(limitOnOperationByCardRepository.findByCard_Id(cardId)).thenReturn(List.of(limit));
 
         // Act & Assert
         assertThatThrownBy(() -> transactionService.addTransaction(cardId, dto))
                 .isInstanceOf(CreateException.class)
-                .hasMessageContaining("дневного бюджета");
+                .hasMessageContaining("не активна");
+        verify(cardLimitEngine, never()).debit(any(), any(), any());
     }
 
     @Test
-    @WithMockUser(roles = "ADMIN", username = "admin@example.com")
-    void getCardTransactions_successForAdmin() {
+    void addTransaction_expiredCard_throwsCreateException() {
         // Arrange
         Long cardId = 1L;
-
+        BigDecimal transactionAmount = new BigDecimal("100");
         Card card = Card.builder()
                 .id(cardId)
+                .balance(new BigDecimal("1000"))
+                .status(CardStatus.ACTIVE)
+                .expiryDate(LocalDate.now().minusDays(1))
                 .build();
+        TransactionDto dto = TransactionDto.builder().amount(transactionAmount).description("Test").build();
 
+        when(cardRepository.debit(cardId, transactionAmount)).thenReturn(0);
         when(cardRepository.findById(cardId)).thenReturn(Optional.of(card));
-        when(transactionRepository.findByCardId(cardId)).thenReturn(List.of());
+
+        // Act & Assert
+        assertThatThrownBy(() -> transactionService.addTransaction(cardId, dto))
+                .isInstanceOf(CreateException.class)
+                .hasMessageContaining("Срок действия карты истёк");
+        verify(cardLimitEngine, never()).debit(any(), any(), any());
+    }
+
+    @Test
+    void addTransactions_expiredCard_rejectsAllDebitsOfCard() {
+        // Arrange
+        Long cardId = 1L;
+        Card card = Card.builder()
+                .id(cardId)
+                .balance(new BigDecimal("150"))
+                .status(CardStatus.ACTIVE)
+                .expiryDate(LocalDate.now().minusDays(1))
+                .build();
+        TransactionDto debit = TransactionDto.builder().amount(new BigDecimal("10")).description("debit").build();
+
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(card));
 
         // Act
-        List<Transaction> result = transactionService.getCardTransactions(cardId);
+        Map<Long, List<TransactionServiceImpl.DebitResult>> results =
+                transactionService.addTransactions(Map.of(cardId, List.of(debit, debit)));
 
         // Assert
-        assertThat(result.size()).isEqualTo(0);
+        List<TransactionServiceImpl.DebitResult> cardResults = results.get(cardId);
+        assertThat(cardResults.get(0).error()).isInstanceOf(CreateException.class);
+        assertThat(cardResults.get(1).error()).isInstanceOf(CreateException.class);
+        assertThat(card.getBalance()).isEqualTo(new BigDecimal("150"));
+        verifyNoInteractions(cardLimitEngine);
     }
 
     @Test
-    @WithMockUser(roles = "USER", username = "user@example.com")
-    void getCardTransactions_accessDeniedForNonOwner() {
+    void addTransactions_rejectsOnlyDebitsOverBalance() {
         // Arrange
         Long cardId = 1L;
-
-        User otherUser = User.builder()
-                .email("other@example.com")
+        Card card = Card.builder()
+                .id(cardId)
+                .balance(new BigDecimal("150"))
+                .status(CardStatus.ACTIVE)
                 .build();
 
+        TransactionDto first = TransactionDto.builder().amount(new BigDecimal("100")).description("first").build();
+        TransactionDto second = TransactionDto.builder().amount(new BigDecimal("100")).description("second").build();
+        TransactionDto third = TransactionDto.builder().amount(new BigDecimal("50")).description("third").build();
+
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(card));
+        when(cardLimitEngine.getBudgets(cardId)).thenReturn(List.of());
+
+        // Act
+        Map<Long, List<TransactionServiceImpl.DebitResult>> results =
+                transactionService.addTransactions(Map.of(cardId, List.of(first, second, third)));
+
+        // Assert
+        List<TransactionServiceImpl.DebitResult> cardResults = results.get(cardId);
+        assertThat(cardResults.get(0).isSuccess()).isTrue();
+        assertThat(cardResults.get(1).error()).isInstanceOf(CreateException.class);
+        assertThat(cardResults.get(2).isSuccess()).isTrue();
+        assertThat(card.getBalance()).isEqualTo(new BigDecimal("0"));
+        verify(transactionRepository, times(1)).saveAll(any());
+    }
+
+    @Test
+    void addTransactions_nonPositiveAmounts_failAndAreNotSaved() {
+        // Arrange
+        Long cardId = 1L;
         Card card = Card.builder()
                 .id(cardId)
-                .user(otherUser)
+                .balance(new BigDecimal("150"))
+                .status(CardStatus.ACTIVE)
                 .build();
+        TransactionDto zero = TransactionDto.builder().amount(BigDecimal.ZERO).description("zero").build();
+        TransactionDto negative = TransactionDto.builder().amount(new BigDecimal("-50")).description("negative").build();
 
-        when(cardRepository.findById(cardId)).thenReturn(Optional.of(card));
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(card));
+        when(cardLimitEngine.getBudgets(cardId)).thenReturn(List.of());
+
+        // Act
+        Map<Long, List<TransactionServiceImpl.DebitResult>> results =
+                transactionService.addTransactions(Map.of(cardId, List.of(zero, negative)));
+
+        // Assert
+        List<TransactionServiceImpl.DebitResult> cardResults = results.get(cardId);
+        assertThat(cardResults.get(0).error()).isInstanceOf(CreateException.class);
+        assertThat(cardResults.get(1).error()).isInstanceOf(CreateException.class);
+        assertThat(card.getBalance()).isEqualTo(new BigDecimal("150"));
+        verify(cardDailyAggregateRepository, never()).add(any(), any(), any(), any(), anyInt());
+        verify(transactionRepository).saveAll(argThat(saved -> !saved.iterator().hasNext()));
+    }
+
+    @Test
+    void addTransactions_staleLimitCacheOnOneCard_reloadsOnlyThatCard() {
+        // Arrange: по кэшу лимит карты 1 позволяет списание, а в БД его уже нет, карта 2 в порядке
+        Card stale = Card.builder().id(1L).balance(new BigDecimal("500")).status(CardStatus.ACTIVE).build();
+        Card other = Card.builder().id(2L).balance(new BigDecimal("500")).status(CardStatus.ACTIVE).build();
+        LimitBudget cachedBudget = new LimitBudget(10L, LimitCard.DAY, new BigDecimal("1000"));
+        LimitBudget freshBudget = new LimitBudget(10L, LimitCard.DAY, new BigDecimal("50"));
+        TransactionDto debit = TransactionDto.builder().amount(new BigDecimal("100")).description("debit").build();
+        TransactionDto small = TransactionDto.builder().amount(new BigDecimal("30")).description("small").build();
+
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(stale, other));
+        when(cardLimitEngine.getBudgets(1L)).thenReturn(List.of(cachedBudget));
+        when(cardLimitEngine.getBudgets(2L)).thenReturn(List.of());
+        when(cardLimitEngine.reload(1L)).thenReturn(List.of(freshBudget));
+        when(cardLimitEngine.findExceeded(List.of(cachedBudget), new BigDecimal("100"))).thenReturn(null);
+        when(cardLimitEngine.findExceeded(List.of(cachedBudget), new BigDecimal("130"))).thenReturn(null);
+        when(cardLimitEngine.findExceeded(List.of(freshBudget), new BigDecimal("100"))).thenReturn(LimitCard.DAY);
+        when(cardLimitEngine.findExceeded(List.of(freshBudget), new BigDecimal("30"))).thenReturn(null);
+        when(cardLimitEngine.debit(1L, List.of(cachedBudget), new BigDecimal("130"))).thenReturn(LimitCard.DAY);
+        when(cardLimitEngine.debit(1L, List.of(freshBudget), new BigDecimal("30"))).thenReturn(null);
+
+        Map<Long, List<TransactionDto>> debits = new LinkedHashMap<>();
+        debits.put(1L, List.of(debit, small));
+        debits.put(2L, List.of(debit));
+
+        // Act
+        Map<Long, List<TransactionServiceImpl.DebitResult>> results = transactionService.addTransactions(debits);
+
+        // Assert: на карте 1 отклонено только списание сверх свежего лимита, карта 2 не затронута
+        assertThat(results.get(1L).get(0).error()).isInstanceOf(CreateException.class);
+        assertThat(results.get(1L).get(1).isSuccess()).isTrue();
+        assertThat(results.get(2L).get(0).isSuccess()).isTrue();
+        assertThat(stale.getBalance()).isEqualTo(new BigDecimal("470"));
+        assertThat(other.getBalance()).isEqualTo(new BigDecimal("400"));
+        verify(cardLimitEngine).reload(1L);
+        verify(cardLimitEngine, never()).reload(2L);
+    }
+
+    @Test
+    void addTransactions_limitStillExceededAfterReload_failsOnlyThatCard() {
+        // Arrange
+        Card rejected = Card.builder().id(1L).balance(new BigDecimal("500")).status(CardStatus.ACTIVE).build();
+        Card other = Card.builder().id(2L).balance(new BigDecimal("500")).status(CardStatus.ACTIVE).build();
+        TransactionDto debit = TransactionDto.builder().amount(new BigDecimal("100")).description("debit").build();
+
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(rejected, other));
+        when(cardLimitEngine.getBudgets(any())).thenReturn(List.of());
+        when(cardLimitEngine.reload(1L)).thenReturn(List.of());
+        when(cardLimitEngine.debit(eq(1L), any(), any())).thenReturn(LimitCard.MONTH);
+
+        Map<Long, List<TransactionDto>> debits = new LinkedHashMap<>();
+        debits.put(1L, List.of(debit));
+        debits.put(2L, List.of(debit));
+
+        // Act
+        Map<Long, List<TransactionServiceImpl.DebitResult>> results = transactionService.addTransactions(debits);
+
+        // Assert
+        assertThat(results.get(1L).get(0).error()).isInstanceOf(CreateException.class);
+        assertThat(results.get(2L).get(0).isSuccess()).isTrue();
+        assertThat(rejected.getBalance()).isEqualTo(new BigDecimal("500"));
+        assertThat(other.getBalance()).isEqualTo(new BigDecimal("400"));
+        verify(cardDailyAggregateRepository, never()).add(eq(1L), any(), any(), any(), anyLong());
+    }
+
+    @Test
+    void addTransactionBatch_returnsResultsInInputOrder() {
+        // Arrange
+        Card first = Card.builder().id(1L).balance(new BigDecimal("100")).status(CardStatus.ACTIVE).build();
+        Card second = Card.builder().id(2L).balance(new BigDecimal("100")).status(CardStatus.ACTIVE).build();
+
+        List<CardTransactionDto> items = List.of(
+                new CardTransactionDto(1L, TransactionDto.builder().amount(new BigDecimal("30")).build()),
+                new CardTransactionDto(2L, TransactionDto.builder().amount(new BigDecimal("-5")).build()),
+                new CardTransactionDto(2L, TransactionDto.builder().amount(new BigDecimal("40")).build()),
+                new CardTransactionDto(1L, TransactionDto.builder().amount(new BigDecimal("90")).build()));
+
+        when(cardRepository.findAllByIdForUpdate(any())).thenReturn(List.of(first, second));
+        when(cardLimitEngine.getBudgets(any())).thenReturn(List.of());
+
+        // Act
+        List<TransactionServiceImpl.DebitResult> results = transactionService.addTransactionBatch(items);
+
+        // Assert
+        assertThat(results.size()).isEqualTo(4);
+        assertThat(results.get(0).isSuccess()).isTrue();
+        assertThat(results.get(1).error()).isInstanceOf(CreateException.class);
+        assertThat(results.get(2).isSuccess()).isTrue();
+        assertThat(results.get(3).error()).isInstanceOf(CreateException.class);
+        assertThat(first.getBalance()).isEqualTo(new BigDecimal("70"));
+        assertThat(second.getBalance()).isEqualTo(new BigDecimal("60"));
+    }
+
+    @Test
+    void addTransactionBatch_tooLarge_throws() {
+        // Arrange
+        List<CardTransactionDto> items = Collections.nCopies(11,
+                new CardTransactionDto(1L, TransactionDto.builder().amount(BigDecimal.ONE).build()));
+
+        // Act & Assert
+        assertThatThrownBy(() -> transactionService.addTransactionBatch(items))
+                .isInstanceOf(CreateException.class);
+        verifyNoInteractions(cardRepository);
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN", username = "admin@example.com")
+    void getCardTransactions_successForAdmin() {
+        // Arrange
+        Long cardId = 1L;
+
+        when(cardRepository.existsById(cardId)).thenReturn(true);
+        when(transactionRepository.findPageByCardId(eq(cardId), any(), any(), any(), any())).thenReturn(List.of());
+
+        // Act
+        TransactionServiceImpl.TransactionPage result = transactionService.getCardTransactions(cardId, null, null, null, null);
+
+        // Assert
+        assertThat(result.transactions().size()).isEqualTo(0);
+        assertThat(result.nextCursor()).isNull();
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN", username = "admin@example.com")
+    void getCardTransactions_fullPage_returnsCursorOfLastItem() {
+        // Arrange
+        Long cardId = 1L;
+        LocalDateTime now = LocalDateTime.of(2024, 5, 1, 12, 0);
+        List<Transaction> rows = List.of(
+                Transaction.builder().id(3L).timestamp(now).build(),
+                Transaction.builder().id(2L).timestamp(now.minusMinutes(1)).build(),
+                Transaction.builder().id(1L).timestamp(now.minusMinutes(2)).build());
+
+        when(cardRepository.existsById(cardId)).thenReturn(true);
+        when(transactionRepository.findPageByCardId(eq(cardId), any(), any(), any(), eq(Limit.of(3)))).thenReturn(rows);
+
+        // Act
+        TransactionServiceImpl.TransactionPage page = transactionService.getCardTransactions(cardId, null, null, null, 2);
+
+        // Assert
+        assertThat(page.transactions().size()).isEqualTo(2);
+        TransactionCursor cursor = TransactionCursor.decode(page.nextCursor());
+        assertThat(cursor.id()).isEqualTo(2L);
+        assertThat(cursor.timestamp()).isEqualTo(now.minusMinutes(1));
+
+        // Следующая страница продолжается строго после курсора
+        transactionService.getCardTransactions(cardId, page.nextCursor(), null, null, 2);
+        verify(transactionRepository).findPageByCardId(eq(cardId), any(), eq(now.minusMinutes(1)), eq(2L), eq(Limit.of(3)));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER", username = "user@example.com")
+    void getCardTransactions_accessDeniedForNonOwner() {
+        // Arrange
+        Long cardId = 1L;
+
+        when(cardOwnershipCache.isOwner("user@example.com", cardId)).thenReturn(false);
 
         // Act & Assert
-        assertThatThrownBy(() -> transactionService.getCardTransactions(cardId))
+        assertThatThrownBy(() -> transactionService.getCardTransactions(cardId, null, null, null, null))
                 .isInstanceOf(SecurityException.class)
                 .hasMessageContaining("Access denied");
+        verify(transactionRepository, never()).findPageByCardId(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN", username = "admin@example.com")
+    void getCardTransactions_missingCardForAdmin_throwsNotFound() {
+        // Arrange
+        when(cardRepository.existsById(1L)).thenReturn(false);
+
+        // Act & Assert
+        assertThatThrownBy(() -> transactionService.getCardTransactions(1L, null, null, null, null))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    void exportCardTransactions_csv_writesHeaderAndEscapedRows() {
+        // Arrange
+        LocalDateTime ts = LocalDateTime.of(2024, 5, 1, 12, 0);
+        when(transactionRepository.streamForExport(eq(1L), any(), any())).thenReturn(Stream.of(
+                new TransactionExportRow(1L, ts, new BigDecimal("10.00"), "Coffee, large"),
+                new TransactionExportRow(2L, ts, new BigDecimal("-5.00"), "=SUM(A1)")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        transactionService.exportCardTransactions(1L, null, null, TransactionExportFormat.CSV, out);
+
+        // Assert
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("""
+                id,timestamp,amount,description
+                1,2024-05-01T12:00,10.00,"Coffee, large"
+                2,2024-05-01T12:00,-5.00,'=SUM(A1)
+                """);
+    }
+
+    @Test
+    void exportCardTransactions_ndjson_writesOneJsonObjectPerLine() {
+        // Arrange
+        LocalDateTime ts = LocalDateTime.of(2024, 5, 1, 12, 0);
+        when(transactionRepository.streamForExport(eq(1L), any(), any())).thenReturn(Stream.of(
+                new TransactionExportRow(1L, ts, new BigDecimal("10.00"), "Coffee")));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        transactionService.exportCardTransactions(1L, null, null, TransactionExportFormat.NDJSON, out);
+
+        // Assert
+        assertThat(out.toString(StandardCharsets.UTF_8))
+                .isEqualTo("{\"id\":1,\"timestamp\":\"2024-05-01T12:00:00\",\"amount\":10.00,\"description\":\"Coffee\"}\n");
+    }
+
+    @Test
+    @WithMockUser(roles = "USER", username = "user@example.com")
+    void getCardSummary_ownerReadsDailyAggregates() {
+        // Arrange
+        Long cardId = 1L;
+        LocalDate from = LocalDate.of(2024, 5, 1);
+        LocalDate to = LocalDate.of(2024, 5, 31);
+        CardDailyAggregate day = CardDailyAggregate.builder().cardId(cardId).day(from).totalDebit(BigDecimal.TEN).totalCredit(BigDecimal.ZERO).txCount(2).build();
+
+        when(cardOwnershipCache.isOwner("user@example.com", cardId)).thenReturn(true);
+        when(cardDailyAggregateRepository.findByCardIdAndDayBetweenOrderByDay(cardId, from, to)).thenReturn(List.of(day));
+
+        // Act
+        List<CardDailyAggregate> result = transactionService.getCardSummary(cardId, from, to);
+
+        // Assert
+        assertThat(result.size()).isEqualTo(1);
+        assertThat(result.get(0).getTxCount()).isEqualTo(2);
+    }
+
+    @Test
+    @WithMockUser(roles = "USER", username = "user@example.com")
+    void getCardSummary_invalidPeriod_throws() {
+        // Act & Assert
+        assertThatThrownBy(() -> transactionService.getCardSummary(1L, LocalDate.of(2024, 6, 1), LocalDate.of(2024, 5, 1)))
+                .isInstanceOf(CreateException.class);
+        verifyNoInteractions(cardDailyAggregateRepository);
     }
 
     @Test
@@ -183,19 +607,20 @@ class TransactionServiceImplTest {
         Card fromCard = Card.builder()
                 .id(fromId)
                 .balance(new BigDecimal("500"))
+                .status(CardStatus.ACTIVE)
                 .user(user)
                 .build();
 
         Card toCard = Card.builder()
                 .id(toId)
                 .balance(new BigDecimal("100"))
+                .status(CardStatus.ACTIVE)
                 .user(user)
                 .build();
 
         TransferRequestDto dto = new TransferRequestDto(fromId, toId, new BigDecimal("200"), "Transfer");
 
-        when(cardRepository.findById(fromId)).thenReturn(Optional.of(fromCard));
-        when(cardRepository.findById(toId)).thenReturn(Optional.of(toCard));
+        when(cardRepository.findAllByIdForUpdate(List.of(fromId, toId))).thenReturn(List.of(fromCard, toCard));
         when(transactionRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
 
         // Act
@@ -205,6 +630,77 @@ class TransactionServiceImplTest {
         assertThat(result.getAmount()).isEqualTo(new BigDecimal("-200"));
         assertThat(fromCard.getBalance()).isEqualTo(new BigDecimal("300"));
         assertThat(toCard.getBalance()).isEqualTo(new BigDecimal("300"));
+        verify(cardDailyAggregateRepository).add(eq(fromId), any(), eq(new BigDecimal("200")), eq(BigDecimal.ZERO), eq(1L));
+        assertThat(result.getDirection()).isEqualTo(TransactionDirection.DEBIT);
+        verify(transactionRepository).save(argThat(tx -> tx != null && tx.getCard() == toCard
+                && tx.getDirection() == TransactionDirection.CREDIT));
+        verify(cardDailyAggregateRepository).add(eq(toId), any(), eq(BigDecimal.ZERO), eq(new BigDecimal("200")), eq(1L));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER", username = "user@example.com")
+    void transferBetweenOwnCards_lockTimeout_retries() {
+        // Arrange
+        Long fromId = 1L;
+        Long toId = 2L;
+
+        User user = User.builder()
+                .email("user@example.com")
+                .build();
+
+        Card fromCard = Card.builder()
+                .id(fromId)
+                .balance(new BigDecimal("500"))
+                .status(CardStatus.ACTIVE)
+                .user(user)
+                .build();
+
+        Card toCard = Card.builder()
+                .id(toId)
+                .balance(new BigDecimal("100"))
+                .status(CardStatus.ACTIVE)
+                .user(user)
+                .build();
+
+        TransferRequestDto dto = new TransferRequestDto(fromId, toId, new BigDecimal("200"), "Transfer");
+
+        when(cardRepository.findAllByIdForUpdate(List.of(fromId, toId)))
+                .thenThrow(new CannotAcquireLockException("lock timeout"))
+                .thenReturn(List.of(fromCard, toCard));
+        when(transactionRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
+
+        // Act
+        Transaction result = transactionService.transferBetweenOwnCards(dto);
+
+        // Assert
+        assertThat(result.getAmount()).isEqualTo(new BigDecimal("-200"));
+        verify(cardRepository, times(2)).findAllByIdForUpdate(List.of(fromId, toId));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER", username = "user@example.com")
+    void transferBetweenOwnCards_withRecorder_recordsOnlySuccessfulAttemptInsideItsTransaction() {
+        // Arrange
+        Long fromId = 1L;
+        Long toId = 2L;
+        User user = User.builder().email("user@example.com").build();
+        Card fromCard = Card.builder().id(fromId).balance(new BigDecimal("500")).status(CardStatus.ACTIVE).user(user).build();
+        Card toCard = Card.builder().id(toId).balance(new BigDecimal("100")).status(CardStatus.ACTIVE).user(user).build();
+        TransferRequestDto dto = new TransferRequestDto(fromId, toId, new BigDecimal("200"), "Transfer");
+
+        when(cardRepository.findAllByIdForUpdate(List.of(fromId, toId)))
+                .thenThrow(new CannotAcquireLockException("lock timeout"))
+                .thenReturn(List.of(fromCard, toCard));
+        when(transactionRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
+        List<Transaction> recorded = new ArrayList<>();
+
+        // Act
+        Transaction result = transactionService.transferBetweenOwnCards(dto, recorded::add);
+
+        // Assert
+        assertThat(recorded.size()).isEqualTo(1);
+        assertThat(recorded.get(0)).isSameAs(result);
+        verify(transactionTemplate, times(2)).execute(any());
     }
 
     @Test
@@ -221,19 +717,20 @@ class TransactionServiceImplTest {
         Card fromCard = Card.builder()
                 .id(fromId)
                 .balance(new BigDecimal("100"))
+                .status(CardStatus.ACTIVE)
                 .user(user)
                 .build();
 
         Card toCard = Card.builder()
                 .id(toId)
                 .balance(new BigDecimal("100"))
+                .status(CardStatus.ACTIVE)
                 .user(user)
                 .build();
 
         TransferRequestDto dto = new TransferRequestDto(fromId, toId, new BigDecimal("200"), "Transfer");
 
-        when(cardRepository.findById(fromId)).thenReturn(Optional.of(fromCard));
-        when(cardRepository.findById(toId)).thenReturn(Optional.of(toCard));
+        when(cardRepository.findAllByIdForUpdate(List.of(fromId, toId))).thenReturn(List.of(fromCard, toCard));
 
         // Act & Assert
         assertThatThrownBy(() -> transactionService.transferBetweenOwnCards(dto))
@@ -241,6 +738,53 @@ class TransactionServiceImplTest {
                 .hasMessageContaining("Insufficient funds");
     }
 
+    @Test
+    @WithMockUser(roles = "USER", username = "user@example.com")
+    void transferBetweenOwnCards_expiredCard_throwsCreateException() {
+        // Arrange
+        User user = User.builder()
+                .email("user@example.com")
+                .build();
+        Card fromCard = Card.builder()
+                .id(1L)
+                .balance(new BigDecimal("500"))
+                .status(CardStatus.ACTIVE)
+                .expiryDate(LocalDate.now().plusYears(1))
+                .user(user)
+                .build();
+        Card toCard = Card.builder()
+                .id(2L)
+                .balance(new BigDecimal("100"))
+                .status(CardStatus.ACTIVE)
+                .expiryDate(LocalDate.now().minusDays(1))
+                .user(user)
+                .build();
+        TransferRequestDto dto = new TransferRequestDto(1L, 2L, new BigDecimal("200"), "Transfer");
+
+        when(cardRepository.findAllByIdForUpdate(List.of(1L, 2L))).thenReturn(List.of(fromCard, toCard));
+
+        // Act & Assert
+        assertThatThrownBy(() -> transactionService.transferBetweenOwnCards(dto))
+                .isInstanceOf(CreateException.class)
+                .hasMessageContaining("Срок действия карты истёк");
+        assertThat(fromCard.getBalance()).isEqualTo(new BigDecimal("500"));
+        verify(transactionRepository, never()).save(any());
+    }
+
+    @Test
+    @WithMockUser(roles = "USER", username = "user@example.com")
+    void transferBetweenOwnCards_negativeAmount_throwsCreateException() {
+        // Arrange
+        TransferRequestDto dto = new TransferRequestDto(1L, 2L, new BigDecimal("-200"), "Transfer");
+
+        // Act & Assert
+        assertThatThrownBy(() -> transactionService.transferBetweenOwnCards(dto))
+                .isInstanceOf(CreateException.class)
+                .hasMessageContaining("больше нуля");
+        verify(cardRepository, never()).findAllByIdForUpdate(any());
+        verify(transactionRepository, never()).save(any());
+    }
+
     @Test
     @WithMockUser(roles = "USER", username = "user@example.com")
     void transferBetweenOwnCards_notOwnCard_throwsCreateException() {
@@ -268,8 +812,7 @@ class TransactionServiceImplTest {
 
         TransferRequestDto dto = new TransferRequestDto(fromId, toId, new BigDecimal("50"), "Transfer");
 
-        when(cardRepository.findById(fromId)).thenReturn(Optional.of(fromCard));
-        when(cardRepository.findById(toId)).thenReturn(Optional.of(toCard));
+        when(cardRepository.findAllByIdForUpdate(List.of(fromId, toId))).thenReturn(List.of(fromCard, toCard));
 
         // Act & Assert
         assertThatThrownBy(() -> transactionService.transferBetweenOwnCards(dto))
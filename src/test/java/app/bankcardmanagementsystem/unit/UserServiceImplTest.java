@@ -9,18 +9,30 @@ import app.bankcardmanagementsystem.exception.CreateException;
 import app.bankcardmanagementsystem.exception.NotFoundException;
 import app.bankcardmanagementsystem.mapper.UserMapper;
 import app.bankcardmanagementsystem.repository.UserRepo;
+import app.bankcardmanagementsystem.repository.projection.UserListRow;
+import app.bankcardmanagementsystem.repository.projection.UserRoleRow;
+import app.bankcardmanagementsystem.service.engine.TokenDenylist;
+import app.bankcardmanagementsystem.service.engine.UserDetailsCache;
+import app.bankcardmanagementsystem.service.engine.UserDetailsCache.AuthenticatedUser;
 import app.bankcardmanagementsystem.service.impl.JWTServiceImpl;
 import app.bankcardmanagementsystem.service.impl.UserServiceImpl;
 import app.bankcardmanagementsystem.utils.jwtToken.EncoderPassword;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.*;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 class UserServiceImplTest {
@@ -28,6 +40,8 @@ class UserServiceImplTest {
     private UserRepo userRepo;
     private UserMapper userMapper;
     private JWTServiceImpl jwtService;
+    private UserDetailsCache userDetailsCache;
+    private TokenDenylist tokenDenylist;
 
     private UserServiceImpl userService;
 
@@ -36,7 +50,11 @@ class UserServiceImplTest {
         userRepo = mock(UserRepo.class);
         userMapper = mock(UserMapper.class);
         jwtService = mock(JWTServiceImpl.class);
-        userService = new UserServiceImpl(userRepo, userMapper, jwtService);
+        userDetailsCache = new UserDetailsCache(userRepo, 100, Duration.ofMinutes(5));
+        tokenDenylist = mock(TokenDenylist.class);
+        userService = new UserServiceImpl(userRepo, userMapper, jwtService, userDetailsCache, tokenDenylist, new BCryptPasswordEncoder(4));
+        ReflectionTestUtils.setField(userService, "listDefaultPageSize", 50);
+        ReflectionTestUtils.setField(userService, "listMaxPageSize", 500);
     }
 
     @Test
@@ -105,27 +123,46 @@ class UserServiceImplTest {
     }
 
     @Test
-    void getListUsers_shouldReturnEncodedUsersList() {
+    void getListUsers_shouldReturnPageWithRolesWithoutLoadingPasswords() {
         // Arrange
-        User user = User.builder()
-                .id(1L)
-                .email("user@example.com")
-                .password("password")
-                .roles(Set.of(Role.ROLE_USER))
-                .build();
+        when(userRepo.findListRows(eq("adm%"), eq(Role.ROLE_ADMIN), any(Pageable.class)))
+                .thenReturn(new PageImpl<>(List.of(new UserListRow(1L, "admin@example.com")), PageRequest.of(0, 50), 1));
+        when(userRepo.findRolesByUserIds(List.of(1L)))
+                .thenReturn(List.of(new UserRoleRow(1L, Role.ROLE_ADMIN), new UserRoleRow(1L, Role.ROLE_USER)));
 
+        // Act
+        Page<UserDto> result = userService.getListUsers("adm", Role.ROLE_ADMIN, 0, null, "email,desc");
 
-        UserDto userDto = new UserDto(1L, "user@example.com", Set.of(Role.ROLE_USER));
+        // Assert
+        assertThat(result.getTotalElements()).isEqualTo(1);
+        assertThat(result.getContent()).containsExactly(
+                new UserDto(1L, "admin@example.com", Set.of(Role.ROLE_ADMIN, Role.ROLE_USER)));
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(userRepo).findListRows(eq("adm%"), eq(Role.ROLE_ADMIN), pageable.capture());
+        assertThat(pageable.getValue().getSort()).isEqualTo(Sort.by(Sort.Direction.DESC, "email").and(Sort.by("id")));
+        verify(userRepo, never()).findAll();
+    }
 
-        when(userRepo.findAll()).thenReturn(List.of(user));
-        when(userMapper.toDto(any(User.class))).thenReturn(userDto);
+    @Test
+    void getListUsers_shouldEscapeEmailPrefixAndCapPageSize() {
+        // Arrange
+        when(userRepo.findListRows(any(), any(), any(Pageable.class))).thenReturn(Page.empty());
 
         // Act
-        List<UserDto> result = userService.getListUsers();
+        userService.getListUsers("a_b%", null, null, 100_000, null);
 
         // Assert
-        assertThat(result).hasSize(1);
-        assertThat(result.get(0).email()).isEqualTo("user@example.com");
+        ArgumentCaptor<Pageable> pageable = ArgumentCaptor.forClass(Pageable.class);
+        verify(userRepo).findListRows(eq("a\\_b\\%%"), isNull(), pageable.capture());
+        assertThat(pageable.getValue().getPageSize()).isEqualTo(500);
+        verify(userRepo, never()).findRolesByUserIds(any());
+    }
+
+    @Test
+    void getListUsers_unsupportedSort_shouldThrow() {
+        // Act & Assert
+        assertThatThrownBy(() -> userService.getListUsers(null, null, 0, 10, "password"))
+                .isInstanceOf(IllegalArgumentException.class);
     }
 
     @Test
@@ -240,4 +277,108 @@ class UserServiceImplTest {
         assertThat(roles).containsExactly(Role.ROLE_ADMIN);
     }
 
+    @Test
+    void userDetailsCache_shouldLoadUserOnceWithPrecomputedAuthorities() {
+        // Arrange
+        User user = User.builder()
+                .id(1L)
+                .email("test@example.com")
+                .password("password")
+                .roles(Set.of(Role.ROLE_USER))
+                .build();
+
+        when(userRepo.findByEmail("test@example.com")).thenReturn(Optional.of(user));
+
+        // Act
+        AuthenticatedUser first = userDetailsCache.get("test@example.com");
+        AuthenticatedUser second = userDetailsCache.get("test@example.com");
+
+        // Assert
+        assertThat(second).isSameAs(first);
+        assertThat(first.user().getUsername()).isEqualTo("test@example.com");
+        assertThat(first.authorities()).extracting("authority").containsExactly("ROLE_USER");
+        verify(userRepo, times(1)).findByEmail("test@example.com");
+    }
+
+    @Test
+    void userDetailsCache_shouldNotCacheMissingUser() {
+        // Arrange
+        when(userRepo.findByEmail("missing@example.com")).thenReturn(Optional.empty());
+
+        // Act
+        AuthenticatedUser first = userDetailsCache.get("missing@example.com");
+        AuthenticatedUser second = userDetailsCache.get("missing@example.com");
+
+        // Assert
+        assertThat(first).isNull();
+        assertThat(second).isNull();
+        verify(userRepo, times(2)).findByEmail("missing@example.com");
+    }
+
+    @Test
+    void updateDataUser_shouldInvalidateCachedUserDetails() {
+        // Arrange
+        User existingUser = User.builder()
+                .id(1L)
+                .email("test@example.com")
+                .password(EncoderPassword.encode("oldPassword"))
+                .roles(Set.of(Role.ROLE_USER))
+                .build();
+
+        when(userRepo.findByEmail("test@example.com")).thenReturn(Optional.of(existingUser));
+        when(userRepo.save(any(User.class))).thenReturn(existingUser);
+        userDetailsCache.get("test@example.com");
+
+        // Act
+        userService.updateDataUser(new UpdateUserDto("newPassword", "test@example.com", Set.of(Role.ROLE_ADMIN)));
+        AuthenticatedUser reloaded = userDetailsCache.get("test@example.com");
+
+        // Assert
+        verify(tokenDenylist).revoke("test@example.com");
+        verify(jwtService).removeAllRefreshTokens("test@example.com");
+        assertThat(reloaded.authorities()).extracting("authority").containsExactly("ROLE_ADMIN");
+    }
+
+    @Test
+    void updateDataUser_sameRolesAndPassword_shouldNotRevokeTokens() {
+        // Arrange
+        User existingUser = User.builder()
+                .id(1L)
+                .email("test@example.com")
+                .password(EncoderPassword.encode("password"))
+                .roles(Set.of(Role.ROLE_USER))
+                .build();
+
+        when(userRepo.findByEmail("test@example.com")).thenReturn(Optional.of(existingUser));
+        when(userRepo.save(any(User.class))).thenReturn(existingUser);
+
+        // Act
+        userService.updateDataUser(new UpdateUserDto("password", "test@example.com", Set.of(Role.ROLE_USER)));
+
+        // Assert
+        verify(tokenDenylist, never()).revoke(any());
+        verify(jwtService, never()).removeAllRefreshTokens(any());
+    }
+
+    @Test
+    void remove_shouldInvalidateCachedUserDetails() {
+        // Arrange
+        User user = User.builder()
+                .id(1L)
+                .email("test@example.com")
+                .password("password")
+                .roles(Set.of(Role.ROLE_USER))
+                .build();
+
+        when(userRepo.findByEmail("test@example.com")).thenReturn(Optional.of(user));
+        userDetailsCache.get("test@example.com");
+
+        // Act
+        userService.remove("test@example.com");
+        when(userRepo.findByEmail("test@example.com")).thenReturn(Optional.empty());
+
+        // Assert
+        assertThat(userDetailsCache.get("test@example.com")).isNull();
+    }
+
 }